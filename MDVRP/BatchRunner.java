@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Solves several problem instances in one JVM, e.g. the whole benchmark set for a regression run:
+ *     java -cp out BatchRunner p01 p02 MDVRP/dataset/p03
+ * Arguments are dataset files or instance names in MDVRP/dataset, without arguments every instance in MDVRP/dataset is solved.
+ * Up to Parameters.concurrentInstances instances are solved at once, all of them sharing Population.executor.
+ * Results and generations of an instance are written as soon as it finishes, a summary is printed at the end.
+ */
+class BatchRunner{
+
+    public static void main(String[] args) throws IOException{
+        System.out.println("Seed: " + Utils.getSeed());
+        // Checkpoints still queued are written out on exit and on a kill, as in Main
+        Runtime.getRuntime().addShutdownHook(new Thread(Checkpoint::finishWrites));
+        List<Path> files = new ArrayList<>();
+        if (args.length == 0){
+            try (Stream<Path> dataset = Files.list(Paths.get("MDVRP/dataset"))){
+                files = dataset.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        for (String arg : args){
+            files.add(Files.isRegularFile(Paths.get(arg)) ? Paths.get(arg) : Paths.get("MDVRP/dataset", arg));
+        }
+        ExecutorService instanceThreads = Executors.newFixedThreadPool(Math.min(Parameters.concurrentInstances, Math.max(files.size(), 1)));
+        List<Future<String>> summaries = new ArrayList<>();
+        for (Path file : files){
+            summaries.add(instanceThreads.submit((Callable<String>) () -> solve(file)));
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-8s %12s %10s %12s %10s %10s", "Problem", "Fitness", "Feasible", "Threshold", "Gap", "Seconds"));
+        for (int i = 0; i < files.size(); i++){
+            try {
+                lines.add(summaries.get(i).get());
+            } catch (ExecutionException e) {
+                lines.add(String.format("%-8s failed: %s", files.get(i).getFileName(), e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        instanceThreads.shutdownNow();
+        lines.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    // Solve a single instance on the calling thread, returns its row of the summary
+    private static String solve(Path file){
+        long startTime = System.nanoTime();
+        if (!Files.isRegularFile(file)){
+            throw new IllegalArgumentException("No dataset file " + file);
+        }
+        Problem problem = Problem.load(file.getFileName().toString(), file.toString());
+        Problem previousProblem = Problem.set(problem);
+        GiantTour best;
+        double bestFitness;
+        Population population;
+        try {
+            if (Parameters.islandCount > 1){
+                IslandModel islands = new IslandModel(problem);
+                islands.run();
+                Main.writeOutput(problem, islands.getBestSolution(), islands.getPopulation(), islands.getGenerationalFitness(), startTime);
+                best = islands.getBestSolution();
+                bestFitness = islands.getBestSolutionFitness();
+                population = islands.getPopulation();
+            } else {
+                GeneticAlgorithm ga = new GeneticAlgorithm(problem);
+                ga.run();
+                Main.writeOutput(problem, ga.getBestSolution(), ga.getPopulation(), ga.getGenerationalFitness(), startTime);
+                best = ga.getBestSolution();
+                bestFitness = ga.getBestSolutionFitness();
+                population = ga.getPopulation();
+            }
+        } finally {
+            Problem.set(previousProblem);
+        }
+        double seconds = (System.nanoTime() - startTime) / Math.pow(10, 9);
+        // Without a feasible solution the summary shows the best individual, as written to MDVRP/results
+        double fitness = best != null ? bestFitness : population.getIndividualByRankAndDeviation(0, true).getRouteFitness();
+        String gap = problem.threshold > 0 ? String.format("%.2f%%", 100 * (fitness - problem.threshold) / problem.threshold) : "-";
+        return String.format("%-8s %12.2f %10s %12.2f %10s %10.2f", problem.name, fitness, best != null ? "yes" : "no", problem.threshold, gap, seconds);
+    }
+}
@@ -0,0 +1,137 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import data_classes.Customer;
+
+/**
+ * Micro benchmarks for the hot paths of the GA, run on real instances from MDVRP/dataset.
+ * Run from the repository root like Main, with the instances to load as arguments (default p01 p08 p23), e.g.
+ *     java -cp out Benchmarks p01 p12
+ * Every benchmark is warmed up before it is measured, and reports throughput and bytes allocated per operation.
+ * Allocations are summed over all threads, so work fanned out to Population.executor is included.
+ * A benchmark that changes an individual gets its own copy of the initial population, so it does not see what an earlier one did.
+ * Rows are named after the method each operation calls, an operation that needs a second call to restore its state names both.
+ * This is a plain main class rather than JMH because the sources are compiled with javac alone and there is no build to add
+ * the JMH dependency and annotation processor to. It has no forking or statistics, so compare runs on the same machine.
+ */
+class Benchmarks{
+
+    private static final long warmupNanos = 1_000_000_000L;
+    private static final long measureNanos = 3_000_000_000L;
+
+    // Results are written here so the JIT can not remove the benchmarked calls
+    static volatile Object sink;
+
+    private static final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args){
+        String[] instances = args.length > 0 ? args : new String[]{"p01", "p08", "p23"};
+        System.out.println("Insertion kernel: " + InsertionKernel.instance.getClass().getName());
+        System.out.println(String.format("%-8s %-52s %14s %14s", "Problem", "Benchmark", "ops/s", "bytes/op"));
+        for (String instance : instances){
+            runInstance(instance);
+        }
+        System.exit(0);
+    }
+
+    private static void runInstance(String instance){
+        Utils.setRandom(Utils.stream(instance.hashCode()));
+        Problem problem = Problem.load(instance, "MDVRP/dataset/"+instance);
+        Problem.set(problem);
+        GeneticAlgorithm ga = new GeneticAlgorithm(problem);
+        List<Individual> individuals = ga.getPopulation().getIndividuals();
+        List<Customer> customers = new ArrayList<>(problem.customers.values());
+
+        benchmark(instance, "Vehicle.feasibleInsertion", () -> {
+            Individual individual = individuals.get(Utils.randomInt(individuals.size()));
+            Depot depot = individual.getDepots().get(Utils.randomInt(individual.getDepots().size()));
+            Vehicle vehicle = depot.getAllVehicles().get(Utils.randomInt(depot.getAllVehicles().size()));
+            return vehicle.feasibleInsertion(customers.get(Utils.randomInt(customers.size())));
+        });
+        Individual inserted = individuals.get(0).clone();
+        benchmark(instance, "Vehicle.removeCustomerAt + Depot.insertAtMostFeasible", () -> {
+            Depot depot = inserted.getDepots().get(Utils.randomInt(inserted.getDepots().size()));
+            Vehicle vehicle = Utils.randomPick(depot.getAllVehicles(), Vehicle::isActive);
+            if (vehicle == null){
+                return depot;
+            }
+            Customer customer = vehicle.removeCustomerAt(Utils.randomInt(vehicle.getCustomers().size()));
+            if (!depot.insertAtMostFeasible(customer)){
+                vehicle.visitCustomer(customer);
+            }
+            return depot;
+        });
+        Individual reinserted = individuals.get(0).clone();
+        benchmark(instance, "Individual.removeCustomer + insertAtMostFeasible", () -> {
+            Customer customer = customers.get(Utils.randomInt(customers.size()));
+            reinserted.removeCustomer(customer);
+            Depot depot = reinserted.getDepotById(customer.getClosestDepot());
+            if (!reinserted.insertAtMostFeasible(depot, customer)){
+                depot.getAllVehicles().get(0).visitCustomer(customer);
+                reinserted.markDirty();
+            }
+            return depot;
+        });
+        benchmark(instance, "Individual.crossover", () -> {
+            Individual p1 = individuals.get(Utils.randomInt(individuals.size()));
+            Individual p2 = individuals.get(Utils.randomInt(individuals.size()));
+            return p1.crossover(p2);
+        });
+        benchmark(instance, "Individual.clone", () -> individuals.get(Utils.randomInt(individuals.size())).clone());
+        Individual intraMutated = individuals.get(0).clone();
+        benchmark(instance, "Individual.intraDepotMutation", () -> {
+            intraMutated.intraDepotMutation();
+            return intraMutated;
+        });
+        Individual interMutated = individuals.get(0).clone();
+        benchmark(instance, "Individual.interDepotMutation", () -> {
+            interMutated.interDepotMutation();
+            return interMutated;
+        });
+        benchmark(instance, "Fitness.getIndividualFitness", () -> Fitness.getIndividualFitness(individuals.get(Utils.randomInt(individuals.size()))));
+        List<GiantTour> tours = new ArrayList<>();
+        individuals.forEach(individual -> tours.add(individual.toGiantTour()));
+        double[] evaluation = new double[4];
+        benchmark(instance, "FlatEvaluator.evaluate", () -> {
+            problem.evaluator.evaluate(tours.get(Utils.randomInt(tours.size())), evaluation);
+            return evaluation;
+        });
+        GenerationScheduler scheduler = new GenerationScheduler(ga.getPopulation());
+        benchmark(instance, "GenerationScheduler.tournamentSelection", scheduler::tournamentSelection);
+        benchmark(instance, "GeneticAlgorithm.step", () -> {
+            ga.step();
+            return ga;
+        });
+    }
+
+    private static void benchmark(String instance, String name, Supplier<Object> operation){
+        measure(operation, warmupNanos);
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long operations = measure(operation, measureNanos);
+        double seconds = (System.nanoTime() - start) / Math.pow(10, 9);
+        long allocated = allocatedBytes() - allocatedBefore;
+        System.out.println(String.format("%-8s %-52s %14.1f %14.1f", instance, name, operations / seconds, (double) allocated / operations));
+    }
+
+    // Run the operation repeatedly for the given time, returns the number of operations completed
+    private static long measure(Supplier<Object> operation, long nanos){
+        long operations = 0;
+        long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end){
+            sink = operation.get();
+            operations++;
+        }
+        return operations;
+    }
+
+    private static long allocatedBytes(){
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())){
+            total += Math.max(bytes, 0);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,170 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import data_classes.Tuple;
+
+/**
+ * Snapshot of a run, written every Parameters.checkpointInterval generations to MDVRP/checkpoints/<problem>.
+ * It holds the seed, the generational fitness of the run and for every island its generation, population and best solution
+ * as GiantTours. Random streams only depend on the seed, the island and the generation, so this is all that is needed to
+ * continue a run where it stopped (Main --resume).
+ * The state is copied on the thread running the GA and written on a background thread, to a temporary file that then
+ * atomically replaces the previous checkpoint.
+ */
+public class Checkpoint {
+
+    private static final int magic = 0x4d44434b; // "MDCK"
+    private static final int version = 2;
+    // Not a constant expression, so javac does not flag the modulo in isDue as a division by zero when checkpoints are off
+    private static final int interval = Math.max(1, Parameters.checkpointInterval);
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public final String problem;
+    public final long seed;
+    public final List<Tuple<Integer, Double>> generationalFitness;
+    public final List<Island> islands;
+
+    public static class Island {
+        public final int island, generation;
+        public final List<GiantTour> population;
+        // null if the island has not found a feasible solution yet
+        public final GiantTour bestSolution;
+        public final double bestSolutionFitness;
+
+        public Island(int island, int generation, List<GiantTour> population, GiantTour bestSolution, double bestSolutionFitness) {
+            this.island = island;
+            this.generation = generation;
+            this.population = population;
+            this.bestSolution = bestSolution;
+            this.bestSolutionFitness = bestSolutionFitness;
+        }
+    }
+
+    public Checkpoint(String problem, long seed, List<Tuple<Integer, Double>> generationalFitness, List<Island> islands) {
+        this.problem = problem;
+        this.seed = seed;
+        this.generationalFitness = new ArrayList<>(generationalFitness);
+        this.islands = islands;
+    }
+
+    public static boolean isDue(int generation) {
+        return Parameters.checkpointInterval > 0 && generation % interval == 0;
+    }
+
+    private static Path path(String problem) {
+        return Paths.get("MDVRP/checkpoints", problem);
+    }
+
+    // Queue the checkpoint for writing and return immediately, a later checkpoint replaces an earlier one on disk
+    public void writeAsync() {
+        try {
+            writer.execute(() -> {
+                try {
+                    write();
+                } catch (IOException error) {
+                    System.out.println(error.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The JVM is shutting down and finishWrites has already run
+        }
+    }
+
+    // Wait for queued checkpoints to be written, called on shutdown so the last checkpoint is not lost
+    public static void finishWrites() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() throws IOException {
+        Path path = path(problem);
+        Files.createDirectories(path.getParent());
+        Path temporary = Files.createTempFile(path.getParent(), problem, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeUTF(problem);
+            out.writeLong(seed);
+            out.writeInt(generationalFitness.size());
+            for (Tuple<Integer, Double> fitness : generationalFitness) {
+                out.writeInt(fitness.x);
+                out.writeDouble(fitness.y);
+            }
+            out.writeInt(islands.size());
+            for (Island island : islands) {
+                out.writeInt(island.island);
+                out.writeInt(island.generation);
+                out.writeBoolean(island.bestSolution != null);
+                if (island.bestSolution != null) {
+                    island.bestSolution.write(out);
+                    out.writeDouble(island.bestSolutionFitness);
+                }
+                out.writeInt(island.population.size());
+                for (GiantTour tour : island.population) {
+                    tour.write(out);
+                }
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The latest checkpoint of a problem, or null if there is none that can be read
+    public static Checkpoint read(String problem) {
+        Path path = path(problem);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != magic || in.readInt() != version || !in.readUTF().equals(problem)) {
+                System.out.println(path + " is not a checkpoint of " + problem);
+                return null;
+            }
+            long seed = in.readLong();
+            List<Tuple<Integer, Double>> generationalFitness = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                generationalFitness.add(new Tuple<>(in.readInt(), in.readDouble()));
+            }
+            List<Island> islands = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                int island = in.readInt();
+                int generation = in.readInt();
+                GiantTour bestSolution = null;
+                double bestSolutionFitness = Double.MAX_VALUE;
+                if (in.readBoolean()) {
+                    bestSolution = GiantTour.read(in);
+                    bestSolutionFitness = in.readDouble();
+                }
+                List<GiantTour> population = new ArrayList<>();
+                for (int j = in.readInt(); j > 0; j--) {
+                    population.add(GiantTour.read(in));
+                }
+                islands.add(new Island(island, generation, population, bestSolution, bestSolutionFitness));
+            }
+            return new Checkpoint(problem, seed, generationalFitness, islands);
+        } catch (IOException error) {
+            System.out.println(error.toString());
+            return null;
+        }
+    }
+}
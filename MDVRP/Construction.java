@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import data_classes.Customer;
+
+/**
+ * Construction heuristics for the seeded share of the initial population, see Parameters.seededShare.
+ * Both order the customers clustered to a depot, and Split then cuts that order into routes.
+ * The polar sweep orders customers by their angle around the depot, starting from a random angle.
+ * Clarke-Wright savings merges routes along the largest savings d(0,i) + d(0,j) - lambda * d(i,j) between SpatialIndex neighbours,
+ * and orders the routes it ends up with like the sweep. lambda is drawn for every individual, so seeded individuals differ.
+ */
+public class Construction {
+
+    private static final double minLambda = 0.5, maxLambda = 1.5; // Range of the route shape parameter of the savings
+
+    public static List<Customer> sweep(List<Customer> customers, Depot depot) {
+        double start = Utils.randomDouble() * 2 * Math.PI;
+        List<Customer> order = new ArrayList<>(customers);
+        order.sort(Comparator.comparingDouble(c -> angle(c.x, c.y, depot, start)));
+        return order;
+    }
+
+    public static List<Customer> savings(List<Customer> customers, Depot depot) {
+        int n = customers.size();
+        DistanceMatrix distances = depot.getDistances();
+        SpatialIndex index = Fitness.getSpatialIndex();
+        double lambda = minLambda + Utils.randomDouble() * (maxLambda - minLambda);
+        int depotNode = distances.index(depot);
+        // Customers of the depot are numbered 0 .. n-1 here, local maps DistanceMatrix ordinals back to that numbering
+        int[] node = new int[n];
+        int[] local = new int[distances.getNumberOfCustomers()];
+        Arrays.fill(local, -1);
+        for (int i = 0; i < n; i++) {
+            node[i] = distances.index(customers.get(i));
+            local[node[i]] = i;
+        }
+
+        int k = index.getNeighbourhoodSize();
+        int[] pairFirst = new int[n * k], pairSecond = new int[n * k];
+        double[] saving = new double[n * k];
+        int pairs = 0;
+        for (int i = 0; i < n; i++) {
+            for (int r = 0; r < k; r++) {
+                int j = local[index.getNeighbour(node[i], r)];
+                if (j < 0) {
+                    continue;
+                }
+                double s = distances.get(depotNode, node[i]) + distances.get(depotNode, node[j]) - lambda * distances.get(node[i], node[j]);
+                if (s > 0) {
+                    pairFirst[pairs] = i;
+                    pairSecond[pairs] = j;
+                    saving[pairs] = s;
+                    pairs++;
+                }
+            }
+        }
+        Integer[] bySaving = new Integer[pairs];
+        for (int p = 0; p < pairs; p++) {
+            bySaving[p] = p;
+        }
+        Arrays.sort(bySaving, (a, b) -> Double.compare(saving[b], saving[a]));
+
+        // Every customer starts on its own route, routes are linked lists through next and prev
+        int[] routeOf = new int[n], next = new int[n], prev = new int[n], first = new int[n], last = new int[n], load = new int[n];
+        double[] length = new double[n];
+        for (int i = 0; i < n; i++) {
+            routeOf[i] = first[i] = last[i] = i;
+            next[i] = prev[i] = -1;
+            load[i] = customers.get(i).demand;
+            length[i] = 2 * distances.get(depotNode, node[i]);
+        }
+        for (int p : bySaving) {
+            int i = pairFirst[p], j = pairSecond[p];
+            int a = routeOf[i], b = routeOf[j];
+            if (a == b || (prev[i] != -1 && next[i] != -1) || (prev[j] != -1 && next[j] != -1) || load[a] + load[b] > depot.maxLoad) {
+                continue;
+            }
+            double merged = length[a] + length[b] - distances.get(depotNode, node[i]) - distances.get(depotNode, node[j]) + distances.get(node[i], node[j]);
+            if (depot.maxDuration != 0 && merged > depot.maxDuration) {
+                continue;
+            }
+            // Turn the routes so a ends in i and b starts with j
+            if (last[a] != i) {
+                reverse(a, first, last, next, prev);
+            }
+            if (first[b] != j) {
+                reverse(b, first, last, next, prev);
+            }
+            next[i] = j;
+            prev[j] = i;
+            for (int c = j; c != -1; c = next[c]) {
+                routeOf[c] = a;
+            }
+            last[a] = last[b];
+            load[a] += load[b];
+            length[a] = merged;
+        }
+
+        double start = Utils.randomDouble() * 2 * Math.PI;
+        List<Integer> routes = new ArrayList<>();
+        double[] routeAngle = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (routeOf[i] == i) {
+                double x = 0, y = 0;
+                int size = 0;
+                for (int c = first[i]; c != -1; c = next[c]) {
+                    x += customers.get(c).x;
+                    y += customers.get(c).y;
+                    size++;
+                }
+                routeAngle[i] = angle(x / size, y / size, depot, start);
+                routes.add(i);
+            }
+        }
+        routes.sort(Comparator.comparingDouble(r -> routeAngle[r]));
+        List<Customer> order = new ArrayList<>(n);
+        for (int r : routes) {
+            for (int c = first[r]; c != -1; c = next[c]) {
+                order.add(customers.get(c));
+            }
+        }
+        return order;
+    }
+
+    private static void reverse(int route, int[] first, int[] last, int[] next, int[] prev) {
+        for (int c = first[route]; c != -1; c = prev[c]) {
+            int swap = next[c];
+            next[c] = prev[c];
+            prev[c] = swap;
+        }
+        int swap = first[route];
+        first[route] = last[route];
+        last[route] = swap;
+    }
+
+    // Angle of a point around the depot, counted from start and in [0, 2 pi)
+    private static double angle(double x, double y, Depot depot, double start) {
+        double angle = (Math.atan2(y - depot.y, x - depot.x) - start) % (2 * Math.PI);
+        return angle < 0 ? angle + 2 * Math.PI : angle;
+    }
+}
@@ -1,8 +1,11 @@
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -10,13 +13,19 @@ import java.util.stream.Collectors;
 import data_classes.Tuple;
 import data_classes.Customer;
 
+/**
+ * Reads a problem instance in the Cordeau format: a header line "m n t", t lines of depot limits "D Q",
+ * n customer lines "i x y d q ..." and t depot lines "i x y ...".
+ * The file is tokenized straight from a memory-mapped buffer into primitive arrays, Depot and Customer objects are only
+ * created by getDepots and getCustomers.
+ */
 public class DataSetIO {
     
-    private List<List<Integer>> dataSet;
     private int maxNumOfVehicles;
     private int numOfCustomers;
     private int numberOfDepots;
-    private int depotIndexStartEnd;
+    private int[] depotMaxDuration, depotMaxLoad, depotX, depotY;
+    private int[] customerId, customerX, customerY, customerDemand;
 
     private static final HashMap<String, Double> thresholds = new HashMap<>(){{
         //If it is stupid but it works, it's not stupid
@@ -49,29 +58,115 @@ public class DataSetIO {
      }};
 
     public void readDataFile(String filename) {
-        try {
-            List<String> lines = Files.readAllLines(Paths.get(filename));
-            this.dataSet = lines.stream()
-                    .map(line -> 
-                        Arrays.asList(line.trim().split("\s+"))
-                              .stream()
-                              .map(Integer::parseInt)
-                              .collect(Collectors.toList())
-                    )
-                    .collect(Collectors.toList());
-            this.maxNumOfVehicles = dataSet.get(0).get(0);
-            this.numOfCustomers = dataSet.get(0).get(1);
-            this.numberOfDepots = dataSet.get(0).get(2);
-            this.depotIndexStartEnd = dataSet.size() - numberOfDepots;
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int[] row = new int[5];
+            readRow(buffer, row, 3, filename);
+            this.maxNumOfVehicles = row[0];
+            this.numOfCustomers = row[1];
+            this.numberOfDepots = row[2];
+            this.depotMaxDuration = new int[numberOfDepots];
+            this.depotMaxLoad = new int[numberOfDepots];
+            this.depotX = new int[numberOfDepots];
+            this.depotY = new int[numberOfDepots];
+            this.customerId = new int[numOfCustomers];
+            this.customerX = new int[numOfCustomers];
+            this.customerY = new int[numOfCustomers];
+            this.customerDemand = new int[numOfCustomers];
+            for (int i = 0; i < numberOfDepots; i++) {
+                readRow(buffer, row, 2, filename);
+                depotMaxDuration[i] = row[0];
+                depotMaxLoad[i] = row[1];
+            }
+            for (int i = 0; i < numOfCustomers; i++) {
+                readRow(buffer, row, 5, filename);
+                customerId[i] = row[0];
+                customerX[i] = row[1];
+                customerY[i] = row[2];
+                customerDemand[i] = row[4];
+            }
+            for (int i = 0; i < numberOfDepots; i++) {
+                readRow(buffer, row, 3, filename);
+                depotX[i] = row[1];
+                depotY[i] = row[2];
+            }
         } catch (IOException error) {
             System.out.println(error.toString());
         }
     }
 
+    // Read the first count integers of the next non-empty line into row and skip the rest of the line
+    private static void readRow(ByteBuffer buffer, int[] row, int count, String filename) {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                if (read == 0) {
+                    continue;
+                }
+                break;
+            }
+            if (b == ' ' || b == '\t' || b == '\r' || read == count) {
+                continue;
+            }
+            boolean negative = b == '-';
+            if (negative) {
+                b = buffer.hasRemaining() ? buffer.get() : 0;
+            }
+            if (b < '0' || b > '9') {
+                throw new IllegalArgumentException("Unexpected character '" + (char) b + "' in " + filename);
+            }
+            int value = 0;
+            while (b >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (!buffer.hasRemaining()) {
+                    break;
+                }
+                b = buffer.get();
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n' && (b < '0' || b > '9')) {
+                throw new IllegalArgumentException("Unexpected character '" + (char) b + "' in " + filename);
+            }
+            row[read++] = negative ? -value : value;
+            if (b == '\n') {
+                break;
+            }
+        }
+        if (read < count) {
+            throw new IllegalArgumentException("Expected at least " + count + " numbers on a line of " + filename);
+        }
+    }
+
+    // The parsed arrays in the binary layout of InstanceCache
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(maxNumOfVehicles);
+        out.writeInt(numOfCustomers);
+        out.writeInt(numberOfDepots);
+        for (int[] column : new int[][]{depotMaxDuration, depotMaxLoad, depotX, depotY, customerId, customerX, customerY, customerDemand}) {
+            for (int value : column) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    void read(ByteBuffer buffer) {
+        this.maxNumOfVehicles = buffer.getInt();
+        this.numOfCustomers = buffer.getInt();
+        this.numberOfDepots = buffer.getInt();
+        this.depotMaxDuration = InstanceCache.readInts(buffer, numberOfDepots);
+        this.depotMaxLoad = InstanceCache.readInts(buffer, numberOfDepots);
+        this.depotX = InstanceCache.readInts(buffer, numberOfDepots);
+        this.depotY = InstanceCache.readInts(buffer, numberOfDepots);
+        this.customerId = InstanceCache.readInts(buffer, numOfCustomers);
+        this.customerX = InstanceCache.readInts(buffer, numOfCustomers);
+        this.customerY = InstanceCache.readInts(buffer, numOfCustomers);
+        this.customerDemand = InstanceCache.readInts(buffer, numOfCustomers);
+    }
+
     public static void writeResults(Individual individual, String filename) {
         List<Depot> depots = individual.getDepots();
         List<String> lines = new ArrayList<>();
-        lines.add(String.format("%.2f", Fitness.getIndividualRouteFitness(individual)));
+        lines.add(String.format("%.2f", individual.getRouteFitness()));
         for (Depot d: depots){
             for (Vehicle v: d.getAllVehicles()){
                 if (v.isActive()){
@@ -86,6 +181,12 @@ public class DataSetIO {
         }
     }
 
+    // Decode the compact tour into Depot/Vehicle views of the problem instance bound to the current thread and write them
+    public static void writeResults(GiantTour tour, String filename) {
+        Problem problem = Problem.current();
+        writeResults(tour.toIndividual(problem.depots, problem.customers), filename);
+    }
+
     public static void writeGenerations(List<Tuple<Integer, Double>> generationalFitness, String filename){
         List<String> lines = generationalFitness.stream().map(gf->String.format("%d\t%.2f", gf.x, gf.y)).collect(Collectors.toList());
         try{
@@ -96,21 +197,19 @@ public class DataSetIO {
     }
     
     public List<Depot> getDepots() {
-        List<Depot> depots = new ArrayList<>();
-        for (int i = 1; i <= numberOfDepots; i++) {
-            int endIndex = depotIndexStartEnd + i - 1;
-            int maxRouteDuration = dataSet.get(i).get(0);
-            int maxVehicleLoad = dataSet.get(i).get(1);
-            depots.add(new Depot(i, maxNumOfVehicles, maxRouteDuration, maxVehicleLoad, dataSet.get(endIndex).get(1),
-                    dataSet.get(endIndex).get(2)));
+        List<Depot> depots = new ArrayList<>(numberOfDepots);
+        for (int i = 0; i < numberOfDepots; i++) {
+            depots.add(new Depot(i + 1, maxNumOfVehicles, depotMaxDuration[i], depotMaxLoad[i], depotX[i], depotY[i]));
         }
         return depots;
     }
 
     public HashMap<Integer, Customer> getCustomers() {
-        return (HashMap<Integer, Customer>) dataSet.subList(numberOfDepots + 1, depotIndexStartEnd).stream()
-                .collect(Collectors.toMap(customerRow -> customerRow.get(0),
-                        customerRow -> new Customer(customerRow.get(0), customerRow.get(1), customerRow.get(2), customerRow.get(4))));
+        HashMap<Integer, Customer> customers = new HashMap<>(2 * numOfCustomers);
+        for (int i = 0; i < numOfCustomers; i++) {
+            customers.put(customerId[i], new Customer(customerId[i], customerX[i], customerY[i], customerDemand[i]));
+        }
+        return customers;
     }
 
     public int getMaxNumOfVehicles() {
@@ -125,8 +224,9 @@ public class DataSetIO {
         return this.numberOfDepots;
     }
 
+    // Instances without a known threshold get 0, so the GA runs until Parameters.generationSpan
     public static double getThreshold(String filename){
-        return thresholds.get(filename);
+        return thresholds.getOrDefault(filename, 0.0);
     }
 
 }
@@ -1,8 +1,7 @@
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 import data_classes.*;
 
@@ -10,7 +9,10 @@ public class Depot{
 
     public final int id, maxLoad, maxVehicles, maxDuration, x, y;
     private List<Vehicle> vehicles = new ArrayList<>();
-    private List<Customer> swappableCustomers = new ArrayList<>();
+    // DistanceMatrix indices of the customers this depot is a candidate for, shared by all copies of the depot
+    private BitSet swappableCustomers = new BitSet();
+    // Distances of the problem instance the depot belongs to, shared by all copies of the depot
+    private DistanceMatrix distances;
     
     public Depot(int id, int maxVehicles, int maxDuration, int maxLoad, int x, int y) {
         this.id = id;
@@ -29,6 +31,7 @@ public class Depot{
         this.x = depot.x;
         this.y = depot.y;
         this.swappableCustomers = depot.getSwappableCustomers();
+        this.distances = depot.getDistances();
         this.vehicles = vehicles;
     }
 
@@ -45,44 +48,40 @@ public class Depot{
         return removed;
     }
 
-    public Vehicle randomRoute(){
-        return getAllVehicles().get(Utils.randomInt(getAllVehicles().size()));
-    }
-
-
-    public boolean insertAtMostFeasible(Customer customer) {
-        List<Tuple<Tuple<Vehicle, Integer>, Double>> feasible = Collections.synchronizedList(new ArrayList<>());
-        for (int i=0; i<this.vehicles.size(); i++) {
-            Vehicle v = this.vehicles.get(i);
-            ThreadedInsertion ti = new ThreadedInsertion(v, customer, feasible);
-            Population.executor.execute(ti);
-        }
-        if (feasible.size() == 0) {
-            return false;
-        }
-        Vehicle v = null;
-        int index = -1;
+    /**
+     * Scores customer against every route of the depot in one pass on the calling thread.
+     * Returns the vehicle and index of the cheapest insertion, see Vehicle.insertionCost, or null if no vehicle can take the customer.
+     */
+    public Tuple<Vehicle, Integer> bestInsertion(Customer customer) {
+        long start = Metrics.start();
+        Vehicle best = null;
+        int bestIndex = -1;
         double minFit = Integer.MAX_VALUE;
-        synchronized (feasible){
-            for (Tuple<Tuple<Vehicle, Integer>, Double> t : feasible){
-                if (t.y < minFit){
-                    v = t.x.x;
-                    index = t.x.y;
-                    minFit = t.y;
-                }
+        for (Vehicle v : this.vehicles) {
+            int index = v.bestInsertionIndex(customer, distances);
+            if (index == -1) {
+                continue;
+            }
+            double fit = v.insertionCost(customer, index, distances);
+            if (fit < minFit) {
+                best = v;
+                bestIndex = index;
+                minFit = fit;
             }
         }
-        v.insertCustomer(customer, index);
-        return true;
+        if (Metrics.enabled) {
+            Problem.current().metrics.stop(Metrics.Metric.insertionNanos, start);
+        }
+        return best == null ? null : new Tuple<>(best, bestIndex);
     }
 
-    public double getDistanceDeviation(){
-        if (this.maxDuration == 0){
-            return 0.0;
+    public boolean insertAtMostFeasible(Customer customer) {
+        Tuple<Vehicle, Integer> insertion = bestInsertion(customer);
+        if (insertion == null) {
+            return false;
         }
-        return vehicles.stream()
-                       .map(v-> Fitness.getVehicleFitness(v, this))
-                       .reduce(0.0, (tot, element) -> tot + (element > this.maxDuration ? element - this.maxDuration : 0.0));
+        insertion.x.insertCustomer(customer, insertion.y);
+        return true;
     }
 
     public List<Vehicle> getAllVehicles() {
@@ -124,6 +123,7 @@ public class Depot{
     private void reversalMutation() {
         List<Integer> vehicleIndices = new ArrayList<>();
         List<Customer> allCustomersFromAllVehicles = new ArrayList<>();
+        List<Vehicle> activeVehicles = new ArrayList<>();
         List<Vehicle> emptyVehicles = new ArrayList<>();
         /* 
         *  Iterate through all vehicles and flatten to 1D list of all customers, while tracking which
@@ -134,6 +134,7 @@ public class Depot{
                 emptyVehicles.add(vehicle);
                 continue;
             }
+            activeVehicles.add(vehicle);
             allCustomersFromAllVehicles.addAll(vehicle.getCustomers());
             vehicleIndices.add(allCustomersFromAllVehicles.size()); // Keep indices for vehicles for permutation
         }
@@ -153,7 +154,8 @@ public class Depot{
         }
         // Iterate through all vehicles and add their corresponding new customers
         List<Vehicle> mutatedVehicleList = new ArrayList<>();
-        Iterator<Vehicle> vehicleIterator = vehicles.iterator();
+        // Segments go back to the vehicles they came from, so every vehicle id stays unique within the depot
+        Iterator<Vehicle> vehicleIterator = activeVehicles.iterator();
         int prevIndex = 0;
         for (Integer index : vehicleIndices) {
             mutatedVehicleList.add(new Vehicle(vehicleIterator.next(), allCustomersFromAllVehicles.subList(prevIndex, index)));
@@ -179,7 +181,7 @@ public class Depot{
 
         boolean inserted = insertAtMostFeasible(randCustomer);
         if (!inserted) {
-            randVehicle.insertCustomer(randCustomer, customerIndex);
+            randVehicle.restoreCustomer(randCustomer, customerIndex);
         }
     }
 
@@ -201,32 +203,70 @@ public class Depot{
         Customer customer1 = randVehicle1.getCustomers().get(randCustomer1);
         Customer customer2 = randVehicle2.getCustomers().get(randCustomer2);
 
-        randVehicle1.getCustomers().set(randCustomer1, customer2);
-        randVehicle2.getCustomers().set(randCustomer2, customer1);
+        randVehicle1.setCustomer(randCustomer1, customer2);
+        randVehicle2.setCustomer(randCustomer2, customer1);
     }
 
-    public List<Customer> getAllCustomersInVehicles() {
-        return vehicles.stream()
-                       .flatMap(vehicle -> vehicle.getCustomers().stream())
-                       .collect(Collectors.toList());
+    // customer is the DistanceMatrix index of the customer
+    public void addSwappableCustomer(int customer) {
+        if (swappableCustomers.get(customer)) {
+            throw new IllegalArgumentException("Customer should not be added as a swappable customer to a Depot more than once!");
+        }
+        swappableCustomers.set(customer);
     }
 
-    public void addSwappableCustomer(Customer customer) {
-        if (!swappableCustomers.contains(customer)) {
-            swappableCustomers.add(customer);
-        } else {
-            throw new IllegalArgumentException("Customer should not be added as a swappable customer to a Depot more than once!");
+    /**
+     * Random customer in the routes of this depot that it is a candidate for and that has another candidate depot,
+     * or null if there is none. Counts the matches and then walks to a random one, like Utils.randomPick.
+     */
+    public Customer randomSwappableCustomer() {
+        int matches = 0;
+        for (Vehicle v : this.vehicles) {
+            for (Customer c : v.getCustomers()) {
+                if (isSwappable(c, distances)) {
+                    matches++;
+                }
+            }
+        }
+        if (matches == 0) {
+            return null;
         }
+        int pick = Utils.randomInt(matches);
+        for (Vehicle v : this.vehicles) {
+            for (Customer c : v.getCustomers()) {
+                if (isSwappable(c, distances) && pick-- == 0) {
+                    return c;
+                }
+            }
+        }
+        return null;
+    }
+
+    private boolean isSwappable(Customer c, DistanceMatrix distances) {
+        return c.candidateList.size() > 1 && swappableCustomers.get(distances.index(c));
     }
 
-    public double getLoadDeviation(){
-        return this.vehicles.stream().map(v->v.getLoad() > v.maxLoad ? v.getLoad() - v.maxLoad : 0.0).reduce(0.0, (acc, el) -> acc + el);
+    public boolean hasCustomers() {
+        for (Vehicle v : this.vehicles) {
+            if (v.isActive()) {
+                return true;
+            }
+        }
+        return false;
     }
 
-    public List<Customer> getSwappableCustomers() {
+    public BitSet getSwappableCustomers() {
         return this.swappableCustomers;
     }
 
+    void setDistances(DistanceMatrix distances) {
+        this.distances = distances;
+    }
+
+    public DistanceMatrix getDistances() {
+        return this.distances;
+    }
+
     @Override
     public String toString() {
         return "Depot ID" + id + "\n Depot x:" + x + "\n Depot y:" + y;
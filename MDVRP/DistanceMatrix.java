@@ -0,0 +1,112 @@
+import java.util.Collection;
+import java.util.List;
+
+import data_classes.Customer;
+
+/**
+ * Read-only table of euclidian distances between every customer and depot in a problem instance.
+ * Customers are given the ordinals 0..n-1 (customer id - 1), depots follow at n..n+d-1 (n + depot id - 1).
+ * The table is filled once on construction and never written afterwards, so it can be shared by any number of threads.
+ * Instances with more than maxDenseNodes nodes skip the table and compute distances from the coordinates.
+ */
+public class DistanceMatrix {
+
+    // Parameters.maxDenseDistanceNodes, or less if the tables of Parameters.concurrentInstances instances that size would fill more than a quarter of the heap
+    static final int maxDenseNodes = (int) Math.min(Parameters.maxDenseDistanceNodes,
+                                                    Math.sqrt(Runtime.getRuntime().maxMemory() / 4.0 / Parameters.concurrentInstances / Double.BYTES));
+
+    private final int numberOfCustomers;
+    private final int size;
+    private final int[] xs, ys;
+    private final double[] distances;
+
+    public DistanceMatrix(Collection<Customer> customers, List<Depot> depots) {
+        this(customers, depots, null);
+    }
+
+    // Uses a table computed earlier (by InstanceCache) for the same customers and depots if one is given
+    public DistanceMatrix(Collection<Customer> customers, List<Depot> depots, double[] table) {
+        this.numberOfCustomers = customers.size();
+        this.size = numberOfCustomers + depots.size();
+        this.xs = new int[size];
+        this.ys = new int[size];
+        for (Customer c : customers) {
+            if (c.id < 1 || c.id > numberOfCustomers) {
+                throw new IllegalArgumentException("Customer ids must be numbered 1.." + numberOfCustomers + ", got " + c.id);
+            }
+            xs[c.id - 1] = c.x;
+            ys[c.id - 1] = c.y;
+        }
+        for (Depot d : depots) {
+            if (d.id < 1 || d.id > depots.size()) {
+                throw new IllegalArgumentException("Depot ids must be numbered 1.." + depots.size() + ", got " + d.id);
+            }
+            xs[numberOfCustomers + d.id - 1] = d.x;
+            ys[numberOfCustomers + d.id - 1] = d.y;
+        }
+        if (size > maxDenseNodes) {
+            this.distances = null;
+            return;
+        }
+        if (table != null) {
+            if (table.length != size * size) {
+                throw new IllegalArgumentException("Distance table has " + table.length + " entries, expected " + size * size);
+            }
+            this.distances = table;
+            return;
+        }
+        this.distances = new double[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                double distance = Fitness.getDistance(xs[i], xs[j], ys[i], ys[j]);
+                distances[i * size + j] = distance;
+                distances[j * size + i] = distance;
+            }
+        }
+    }
+
+    public int index(Customer customer) {
+        return customer.id - 1;
+    }
+
+    public int index(Depot depot) {
+        return numberOfCustomers + depot.id - 1;
+    }
+
+    public double get(int from, int to) {
+        if (distances == null) {
+            return Fitness.getDistance(xs[from], xs[to], ys[from], ys[to]);
+        }
+        return distances[from * size + to];
+    }
+
+    // The dense table, null if distances are computed on demand. Must not be written to
+    double[] getTable() {
+        return distances;
+    }
+
+    // Coordinates by index, for InsertionKernel. Must not be written to
+    int[] getXs() {
+        return xs;
+    }
+
+    int[] getYs() {
+        return ys;
+    }
+
+    public int getX(int index) {
+        return xs[index];
+    }
+
+    public int getY(int index) {
+        return ys[index];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int getNumberOfCustomers() {
+        return this.numberOfCustomers;
+    }
+}
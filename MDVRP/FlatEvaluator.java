@@ -0,0 +1,108 @@
+import java.util.Collection;
+import java.util.List;
+
+import data_classes.Customer;
+
+/**
+ * Evaluates a GiantTour straight from flat arrays: routes as customer ordinals, demands by DistanceMatrix index and
+ * coordinates or the dense table in DistanceMatrix. No Depot, Vehicle or Customer objects are built and nothing is allocated,
+ * so a tour can be scored without toIndividual. Gives the same values as Individual.calculateFitness on the same routes.
+ * Behind Fitness.getIndividualFitness, and the reference calculateFitness is checked against in debug mode.
+ */
+public class FlatEvaluator {
+
+    // Positions in the result array of evaluate
+    public static final int fitness = 0, routeFitness = 1, distanceDeviation = 2, loadDeviation = 3;
+
+    private final DistanceMatrix distances;
+    private final int[] demand;
+    // By position in the depot list, which is the depot order of GiantTour
+    private final int[] depotNode, maxLoad, maxDuration;
+
+    public FlatEvaluator(DistanceMatrix distances, Collection<Customer> customers, List<Depot> depots) {
+        this.distances = distances;
+        this.demand = new int[distances.getNumberOfCustomers()];
+        for (Customer customer : customers) {
+            demand[distances.index(customer)] = customer.demand;
+        }
+        this.depotNode = new int[depots.size()];
+        this.maxLoad = new int[depots.size()];
+        this.maxDuration = new int[depots.size()];
+        for (int d = 0; d < depots.size(); d++) {
+            depotNode[d] = distances.index(depots.get(d));
+            maxLoad[d] = depots.get(d).maxLoad;
+            maxDuration[d] = depots.get(d).maxDuration;
+        }
+    }
+
+    // Writes the fitness, route fitness, distance deviation and load deviation of the tour to result, at the positions above
+    public void evaluate(GiantTour tour, double[] result) {
+        int activeVehicles = 0;
+        double totalLength = 0.0, totalDurationDeviation = 0.0, totalLoadDeviation = 0.0;
+        for (int route = 0; route < tour.getNumberOfRoutes(); route++) {
+            int start = tour.getRouteStart(route), end = tour.getRouteEnd(route);
+            if (start == end) {
+                continue;
+            }
+            int d = route / tour.getMaxVehicles();
+            int previous = depotNode[d], load = 0;
+            double length = 0.0;
+            for (int i = start; i < end; i++) {
+                int customer = tour.getCustomer(i);
+                length += distances.get(previous, customer);
+                load += demand[customer];
+                previous = customer;
+            }
+            length += distances.get(previous, depotNode[d]);
+            activeVehicles++;
+            totalLength += length;
+            totalDurationDeviation += durationDeviation(d, length);
+            totalLoadDeviation += loadDeviation(d, load);
+        }
+        result[fitness] = Fitness.getFitness(activeVehicles, totalLength, totalDurationDeviation, totalLoadDeviation);
+        result[routeFitness] = totalLength;
+        result[distanceDeviation] = totalDurationDeviation;
+        result[loadDeviation] = totalLoadDeviation;
+    }
+
+    /**
+     * Fitness of the routes of an individual in the same single pass, reading the matrix indices every Vehicle keeps
+     * of its route instead of the customers. Does not read or change the evaluation the individual caches.
+     * Its depots must be in the order of the depot list.
+     */
+    public double fitness(Individual individual) {
+        List<Depot> depots = individual.getDepots();
+        int activeVehicles = 0;
+        double totalLength = 0.0, totalDurationDeviation = 0.0, totalLoadDeviation = 0.0;
+        for (int d = 0; d < depots.size(); d++) {
+            List<Vehicle> vehicles = depots.get(d).getAllVehicles();
+            for (int v = 0; v < vehicles.size(); v++) {
+                Vehicle vehicle = vehicles.get(v);
+                if (!vehicle.isActive()) {
+                    continue;
+                }
+                int[] route = vehicle.getNodes();
+                int last = vehicle.getCustomers().size() + 1, load = 0;
+                double length = 0.0;
+                for (int i = 1; i < last; i++) {
+                    length += distances.get(route[i - 1], route[i]);
+                    load += demand[route[i]];
+                }
+                length += distances.get(route[last - 1], route[last]);
+                activeVehicles++;
+                totalLength += length;
+                totalDurationDeviation += durationDeviation(d, length);
+                totalLoadDeviation += loadDeviation(d, load);
+            }
+        }
+        return Fitness.getFitness(activeVehicles, totalLength, totalDurationDeviation, totalLoadDeviation);
+    }
+
+    private double durationDeviation(int depot, double length) {
+        return maxDuration[depot] != 0 && length > maxDuration[depot] ? length - maxDuration[depot] : 0.0;
+    }
+
+    private double loadDeviation(int depot, int load) {
+        return load > maxLoad[depot] ? load - maxLoad[depot] : 0.0;
+    }
+}
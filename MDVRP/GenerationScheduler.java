@@ -0,0 +1,171 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs one generation of the GA as phases: selection, crossover/mutation, local search and evaluation.
+ * Selection is too cheap to be worth a task and runs on the calling thread. Every other phase submits a fixed number of tasks
+ * to Population.executor and waits for all of them before the next phase starts.
+ * Each task gets its own random stream split off the calling thread's stream in task order, so results do not depend on scheduling.
+ * Crossover tasks write to their own slot of an array allocated for the generation, which is safe to read
+ * once invokeAll has returned.
+ */
+public class GenerationScheduler {
+
+    private final Population population;
+
+    public GenerationScheduler(Population population) {
+        this.population = population;
+    }
+
+    public List<Individual> nextGeneration(int generation) {
+        List<Individual> parents = tournamentSelection();
+        List<Individual> offspring = crossover(parents, generation);
+        if (Parameters.localSearchRate > 0) {
+            localSearch(offspring);
+        }
+        evaluate(offspring);
+        long start = Metrics.start();
+        List<Individual> survivors = population.survivorSelection(population.getIndividuals(), offspring);
+        if (Metrics.enabled) {
+            Problem.current().metrics.stop(Metrics.Metric.survivorSelectionNanos, start);
+        }
+        return survivors;
+    }
+
+    /*
+     * Cumulative probabilities of the place in a tournament that wins: the best wins with probability p, the second best
+     * with p*(1-p), the third best with p*(1-p)^2 and so on, and the worst takes what is left
+     */
+    private static final double[] tournamentProbs = tournamentProbs();
+
+    private static double[] tournamentProbs() {
+        double p = Parameters.tournamentProb;
+        double[] probs = new double[Parameters.tournamentSize];
+        double cumulativeP = 0.0, share = p;
+        for (int i = 0; i < probs.length; i++) {
+            cumulativeP += share;
+            share *= 1 - p;
+            probs[i] = cumulativeP;
+        }
+        return probs;
+    }
+
+    /**
+     * Create parents list of given parentSelectionSize in parameters, in one pass on the calling thread.
+     * A tournament draws ranks in the population sorted by fitness instead of individuals, so the sorted ranks give
+     * the order within the tournament and the winner is the rank at the place drawn from tournamentProbs.
+     */
+    public List<Individual> tournamentSelection() {
+        long start = Metrics.start();
+        Individual[] parents = new Individual[Parameters.parentSelectionSize - Parameters.eliteSize];
+        int[] ranks = new int[Parameters.tournamentSize];
+        int size = population.getIndividuals().size();
+        for (int i = 0; i < parents.length; i++) {
+            for (int t = 0; t < ranks.length; t++) {
+                ranks[t] = Utils.randomInt(size);
+            }
+            Arrays.sort(ranks);
+            parents[i] = population.getIndividualByFitnessRank(ranks[tournamentPlace()]);
+        }
+        if (Metrics.enabled) {
+            Problem.current().metrics.stop(Metrics.Metric.selectionNanos, start);
+        }
+        return Arrays.asList(parents);
+    }
+
+    private static int tournamentPlace() {
+        double randselect = Utils.randomDouble();
+        for (int i = 0; i < tournamentProbs.length - 1; i++) {
+            if (randselect < tournamentProbs[i]) {
+                return i;
+            }
+        }
+        return tournamentProbs.length - 1;
+    }
+
+    // One task per pair of offspring slots, the last task only fills one slot if populationSize is odd
+    public List<Individual> crossover(List<Individual> parents, int generation) {
+        Individual[] offspring = new Individual[Parameters.populationSize];
+        List<Callable<Void>> crossovers = new ArrayList<>((offspring.length + 1) / 2);
+        for (int i = 0; i < offspring.length; i += 2) {
+            Individual p1 = parents.get(Utils.randomInt(parents.size()));
+            Individual p2 = Utils.randomPick(parents, p -> p != p1);
+            crossovers.add(new ThreadedCrossover(p1, p2, generation, offspring, i, Utils.split()));
+        }
+        invokeAll(crossovers);
+        return Arrays.asList(offspring);
+    }
+
+    // Improve a random share of the offspring with LocalSearch, which offspring is decided here so it does not depend on scheduling
+    public void localSearch(List<Individual> offspring) {
+        Metrics metrics = Problem.current().metrics;
+        List<Callable<Void>> improvements = new ArrayList<>();
+        for (Individual individual : offspring) {
+            if (Utils.randomDouble() < Parameters.localSearchRate) {
+                improvements.add(() -> {
+                    long start = Metrics.start();
+                    individual.localSearch();
+                    if (Metrics.enabled) {
+                        metrics.stop(Metrics.Metric.localSearchNanos, start);
+                    }
+                    return null;
+                });
+            }
+        }
+        invokeAll(improvements);
+    }
+
+    public void evaluate(List<Individual> individuals) {
+        Metrics metrics = Problem.current().metrics;
+        List<Callable<Void>> evaluations = new ArrayList<>();
+        for (Individual individual : individuals) {
+            evaluations.add(() -> {
+                long start = Metrics.start();
+                individual.calculateFitness();
+                if (Metrics.enabled) {
+                    metrics.stop(Metrics.Metric.evaluationNanos, start);
+                }
+                return null;
+            });
+        }
+        invokeAll(evaluations);
+        if (Metrics.enabled) {
+            metrics.add(Metrics.Metric.evaluations, individuals.size());
+        }
+    }
+
+    /**
+     * Submit all tasks to the executor and block until every one of them is done, results are in task order.
+     * The tasks run with the Problem bound to the calling thread, the executor is shared by every instance being solved.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        Problem problem = Problem.current();
+        List<Callable<T>> bound = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            if (Metrics.enabled) {
+                bound.add(Problem.bind(problem, () -> {
+                    problem.metrics.sampleQueue(Population.executor);
+                    return task.call();
+                }));
+            } else {
+                bound.add(Problem.bind(problem, task));
+            }
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : Population.executor.invokeAll(bound)) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Generation task failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for generation tasks", e);
+        }
+        return results;
+    }
+}
@@ -1,30 +1,89 @@
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
-import data_classes.Customer;
 import data_classes.Tuple;
 
 public class GeneticAlgorithm {
 
     private int generation = 0;
-    private double threshold;
+    private final int island;
+    private final Problem problem;
     Population p;
+    private Individual bestInd;
+    private GenerationScheduler scheduler;
     private List<Tuple<Integer, Double>> generationalFitness = new ArrayList<>();
+    // Best individual without duration or load deviation seen so far, kept as a GiantTour so the snapshot is cheap
+    private volatile GiantTour bestSolution;
+    private volatile double bestSolutionFitness = Double.MAX_VALUE;
+    // System.nanoTime after which the run stops, counted from creating the GA so the initial population is part of the budget
+    private final long deadline = Parameters.timeBudgetSeconds > 0 ? System.nanoTime() + (long) (Parameters.timeBudgetSeconds * Math.pow(10, 9)) : Long.MAX_VALUE;
+    // Generation in which the best fitness in the population last improved
+    private int lastImprovement;
+    private double bestFitness;
+    private volatile boolean stopRequested = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
     
-    public GeneticAlgorithm(DataSetIO dataSet) {
-        this.threshold = DataSetIO.getThreshold(Parameters.problem);
-        HashMap<Integer, Customer> customers = dataSet.getCustomers();
-        Fitness.populateCustomers(customers);
-        List<Depot> depots = dataSet.getDepots();
-        p = new Population(dataSet.getMaxNumOfVehicles());
-        p.setCustomers(customers);
-        p.setDepots(depots);
-        initialDepotClustering(depots, customers.values());
-        p.generatePopulation();
-        generationalFitness.add(new Tuple<>(0, Fitness.getIndividualRouteFitness(p.getIndividualByRank(0))));
+    public GeneticAlgorithm(Problem problem) {
+        this(problem, 0);
+    }
+
+    /**
+     * Creates a new population for a problem instance. 
+     * island selects the random streams used by this population, populations with different islands evolve independently.
+     */
+    public GeneticAlgorithm(Problem problem, int island) {
+        this.problem = problem;
+        this.island = island;
+        p = new Population(problem);
+        Problem previousProblem = Problem.set(problem);
+        SplittableRandom previous = Utils.setRandom(Utils.stream(island));
+        try {
+            p.generatePopulation();
+        } finally {
+            Utils.setRandom(previous);
+            Problem.set(previousProblem);
+        }
+        scheduler = new GenerationScheduler(p);
+        updateBestSolution();
+        bestInd = p.getIndividualByRank(0);
+        bestFitness = p.getIndividualByRankAndDeviation(0, false).getFitness();
+        generationalFitness.add(new Tuple<>(0, bestInd.getRouteFitness()));
+    }
+
+    /**
+     * Continues an island from a checkpoint, generationalFitness is the history to append to.
+     * Individuals are rebuilt from their GiantTours in population order.
+     */
+    public GeneticAlgorithm(Problem problem, Checkpoint.Island state, List<Tuple<Integer, Double>> generationalFitness) {
+        this.problem = problem;
+        this.island = state.island;
+        this.generation = state.generation;
+        p = new Population(problem);
+        Problem previousProblem = Problem.set(problem);
+        try {
+            p.restore(state.population);
+        } finally {
+            Problem.set(previousProblem);
+        }
+        scheduler = new GenerationScheduler(p);
+        bestSolution = state.bestSolution;
+        bestSolutionFitness = state.bestSolutionFitness;
+        bestInd = p.getIndividualByRankAndDeviation(0, false);
+        bestFitness = bestInd.getFitness();
+        lastImprovement = generation;
+        this.generationalFitness = new ArrayList<>(generationalFitness);
+    }
+
+    // Copy of the state needed to continue this island later
+    public Checkpoint.Island snapshot() {
+        List<GiantTour> population = new ArrayList<>();
+        for (Individual individual : p.getIndividuals()) {
+            population.add(individual.toGiantTour());
+        }
+        return new Checkpoint.Island(island, generation, population, bestSolution, bestSolutionFitness);
     }
 
     public Population getPopulation() {
@@ -35,50 +94,96 @@ public class GeneticAlgorithm {
         return generationalFitness;
     }
 
-    public static void initialDepotClustering(List<Depot> depots, Collection<Customer> customers) {
-        for (Customer customer : customers) {
-            Depot closestDepot = depots.get(0);
-            double closestDistance = Fitness.getDistance(customer, closestDepot);
-            for (int i = 1; i < depots.size(); i++) {
-                Double distance = Fitness.getDistance(customer, depots.get(i));
-                if (distance < closestDistance) {
-                    closestDepot = depots.get(i);
-                    closestDistance = Fitness.getDistance(customer, closestDepot);
-                }
-            }
-            HashMap<Integer, Depot> depotMap = new HashMap<>();
-            customer.candidateList.add(closestDepot.id);
-            depotMap.put(closestDepot.id, closestDepot);
-            closestDepot.addSwappableCustomer(customer);
-            for (int i = 0; i < depots.size(); i++) {
-                if (depots.get(i) == closestDepot) {
-                    continue;
+    public GiantTour getBestSolution() {
+        return bestSolution;
+    }
+
+    public double getBestSolutionFitness() {
+        return bestSolutionFitness;
+    }
+
+    private void updateBestSolution() {
+        Individual candidate = p.getIndividualByRankAndDeviation(0, true);
+        if (!candidate.isFeasible()) {
+            return;
+        }
+        double candidateFitness = candidate.getRouteFitness();
+        if (candidateFitness < bestSolutionFitness) {
+            bestSolutionFitness = candidateFitness;
+            bestSolution = candidate.toGiantTour();
+        }
+    }
+
+    public void run() {
+        try {
+            while (!isFinished()){
+                step();
+                if (Checkpoint.isDue(generation)) {
+                    new Checkpoint(problem.name, Utils.getSeed(), generationalFitness, List.of(snapshot())).writeAsync();
                 }
-                double distance_c_d = Fitness.getDistance(customer, depots.get(i));
-                // "Using Genetic Algorithms for Multi-depot Vehicle Routing" p. 90:
-                if (((distance_c_d - closestDistance) / closestDistance) <= Parameters.swappableCustomerDistance) {
-                    customer.candidateList.add(depots.get(i).id);
-                    depots.get(i).addSwappableCustomer(customer);
-                    depotMap.put(depots.get(i).id, depots.get(i));
+                if (Metrics.isDue(generation)) {
+                    report();
                 }
             }
-            customer.candidateList.sort((d1, d2) -> Double.compare(Fitness.getDistance(customer, depotMap.get(d1)), Fitness.getDistance(customer, depotMap.get(d2))));
+            if (Metrics.enabled && !Metrics.isDue(generation)) {
+                report();
+            }
+        } finally {
+            stopped.countDown();
         }
     }
 
-    public void run() {
-        Individual bestInd = p.getIndividualByRank(0);
-        double bestIndFitness = Fitness.getIndividualRouteFitness(bestInd);
-        while ((bestIndFitness > threshold || bestInd.getDistanceDeviation() != 0.0 || bestInd.getLoadDeviation() != 0.0) && generation < Parameters.generationSpan){
-            generation++;
-            List<Individual> parents = p.tournamentSelection();
-            List<Individual> new_pop = p.crossover(parents, generation);
-            new_pop = p.survivorSelection(p.getIndividuals(), new_pop);
-            p.setNewPopulation(new_pop);
-            bestInd = p.getIndividualByRankAndDeviation(0, false);
-            bestIndFitness = Fitness.getIndividualRouteFitness(bestInd);
-            System.out.println(String.format("Generation %d\tRoute Fitness: %.2f\tDeviation from max duration: %.2f\tDeviation from max load: %.2f", generation, bestIndFitness, bestInd.getDistanceDeviation(), bestInd.getLoadDeviation()));
-            generationalFitness.add(new Tuple<>(generation, bestIndFitness));
+    // Ask the run to stop after the current generation, e.g. from a shutdown hook
+    public void requestStop() {
+        stopRequested = true;
+    }
+
+    // Wait until run has returned, so its results can be read without racing the GA thread
+    public void awaitStopped() throws InterruptedException {
+        stopped.await(Parameters.stopTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    // Export the metrics of the problem and print a line of progress, every Parameters.metricsInterval generations instead of every generation
+    void report() {
+        problem.metrics.export(problem.name, generation);
+        System.out.println(String.format("%s\tGeneration %d\tRoute Fitness: %.2f\tDeviation from max duration: %.2f\tDeviation from max load: %.2f", problem.name, generation, bestInd.getRouteFitness(), bestInd.getDistanceDeviation(), bestInd.getLoadDeviation()));
+    }
+
+    // Evolve the population by a single generation
+    public void step() {
+        generation++;
+        // Randomness of a generation only depends on the seed, the island and the generation number
+        Problem previousProblem = Problem.set(problem);
+        SplittableRandom previous = Utils.setRandom(Utils.stream(island, generation));
+        try {
+            p.setNewPopulation(scheduler.nextGeneration(generation));
+        } finally {
+            Utils.setRandom(previous);
+            Problem.set(previousProblem);
+        }
+        updateBestSolution();
+        bestInd = p.getIndividualByRankAndDeviation(0, false);
+        if (bestInd.getFitness() < bestFitness) {
+            bestFitness = bestInd.getFitness();
+            lastImprovement = generation;
         }
+        generationalFitness.add(new Tuple<>(generation, bestInd.getRouteFitness()));
+    }
+
+    // Stops on reaching the threshold, the generation span, the time budget, stagnation or a stop request
+    public boolean isFinished() {
+        return (bestInd.getRouteFitness() <= problem.threshold && bestInd.isFeasible()) 
+                || generation >= Parameters.generationSpan
+                || System.nanoTime() >= deadline
+                || (Parameters.stagnationGenerations > 0 && generation - lastImprovement >= Parameters.stagnationGenerations)
+                || stopRequested;
+    }
+
+    public Problem getProblem() {
+        return problem;
+    }
+
+    public int getGeneration() {
+        return generation;
     }
 }
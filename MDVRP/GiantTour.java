@@ -0,0 +1,134 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import data_classes.Customer;
+
+/**
+ * Compact encoding of an Individual: every route of every depot laid out after each other in one giant tour.
+ * Route r is the route at position (r % maxVehicles) in the vehicle list of depot (r / maxVehicles) in depot list order.
+ * genes[0 .. numberOfRoutes) holds the end offset of each route in the tour, genes[numberOfRoutes .. 2 * numberOfRoutes) the id
+ * of the vehicle driving it (0 past the end of a vehicle list) and genes[2 * numberOfRoutes ..) the customer ordinals.
+ * A tour never changes after it is built, so the best solution and checkpoints share tours without copying them.
+ * Depot and Vehicle objects are only built again through toIndividual.
+ * The vehicle order is kept because the mutations pick routes by list position, a resumed run depends on it.
+ */
+public class GiantTour {
+
+    private final int maxVehicles, numberOfRoutes;
+    private final int[] genes;
+
+    public GiantTour(Individual individual) {
+        List<Depot> depots = individual.getDepots();
+        this.maxVehicles = individual.getMaxVehicles();
+        this.numberOfRoutes = depots.size() * maxVehicles;
+        this.genes = new int[2 * numberOfRoutes + individual.numberOfCustomers()];
+        int position = 0;
+        for (int d = 0; d < depots.size(); d++) {
+            List<Vehicle> vehicles = depots.get(d).getAllVehicles();
+            for (int v = 0; v < maxVehicles; v++) {
+                int route = d * maxVehicles + v;
+                if (v < vehicles.size()) {
+                    Vehicle vehicle = vehicles.get(v);
+                    for (Customer c : vehicle.getCustomers()) {
+                        genes[2 * numberOfRoutes + position++] = c.id - 1;
+                    }
+                    genes[numberOfRoutes + route] = vehicle.id;
+                }
+                genes[route] = position;
+            }
+        }
+    }
+
+    private GiantTour(int maxVehicles, int numberOfRoutes, int[] genes) {
+        this.maxVehicles = maxVehicles;
+        this.numberOfRoutes = numberOfRoutes;
+        this.genes = genes;
+    }
+
+    public int getNumberOfRoutes() {
+        return this.numberOfRoutes;
+    }
+
+    public int getMaxVehicles() {
+        return this.maxVehicles;
+    }
+
+    public int getNumberOfCustomers() {
+        return this.genes.length - 2 * numberOfRoutes;
+    }
+
+    // Index in the giant tour of the first customer in route r
+    public int getRouteStart(int route) {
+        return route == 0 ? 0 : genes[route - 1];
+    }
+
+    // Index in the giant tour after the last customer in route r
+    public int getRouteEnd(int route) {
+        return genes[route];
+    }
+
+    // Id of the vehicle driving route r, 0 if the depot has fewer vehicles than maxVehicles
+    public int getVehicleId(int route) {
+        return genes[numberOfRoutes + route];
+    }
+
+    // Customer ordinal (customer id - 1) at a position in the giant tour
+    public int getCustomer(int position) {
+        return genes[2 * numberOfRoutes + position];
+    }
+
+    /**
+     * Build the Depot/Vehicle object graph for this tour on top of copies of the given depots.
+     * customers is keyed by customer id, as in Problem.customers.
+     */
+    public Individual toIndividual(List<Depot> depots, Map<Integer, Customer> customers) {
+        Individual individual = new Individual(depots, maxVehicles);
+        List<Depot> copies = individual.getDepots();
+        for (int d = 0; d < copies.size(); d++) {
+            // Put the vehicles back in the list order they had when the tour was taken
+            int[] slot = new int[maxVehicles + 1];
+            for (int v = 0; v < maxVehicles; v++) {
+                slot[getVehicleId(d * maxVehicles + v)] = v;
+            }
+            copies.get(d).getAllVehicles().sort(Comparator.comparingInt(vehicle -> slot[vehicle.id]));
+        }
+        for (int route = 0; route < numberOfRoutes; route++) {
+            int start = getRouteStart(route), end = getRouteEnd(route);
+            if (start == end) {
+                continue;
+            }
+            List<Customer> routeCustomers = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                routeCustomers.add(customers.get(getCustomer(i) + 1));
+            }
+            Vehicle vehicle = copies.get(route / maxVehicles).getAllVehicles().get(route % maxVehicles);
+            vehicle.addCustomersToRoute(routeCustomers, 0);
+        }
+        individual.calculateFitness();
+        return individual;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(maxVehicles);
+        out.writeInt(numberOfRoutes);
+        out.writeInt(genes.length);
+        for (int gene : genes) {
+            out.writeInt(gene);
+        }
+    }
+
+    public static GiantTour read(DataInputStream in) throws IOException {
+        int maxVehicles = in.readInt();
+        int numberOfRoutes = in.readInt();
+        int[] genes = new int[in.readInt()];
+        for (int i = 0; i < genes.length; i++) {
+            genes[i] = in.readInt();
+        }
+        return new GiantTour(maxVehicles, numberOfRoutes, genes);
+    }
+}
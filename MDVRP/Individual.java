@@ -1,10 +1,9 @@
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import data_classes.Tuple;
 import data_classes.Customer;
@@ -13,15 +12,80 @@ public class Individual{
 
     private List<Depot> depots;
     private int maxVehicles;
-    private double fitness;
+    // Cached evaluation, recomputed on the next read after any change to the routes
+    private double fitness, routeFitness, distanceDeviation, loadDeviation;
+    private boolean dirty = true;
+    // Route and position of every customer by DistanceMatrix index, built on first use and kept up to date by removeCustomer
+    // and insertAtMostFeasible. Any other change to the routes goes through markDirty, which drops it
+    private Vehicle[] vehicleOf;
+    private int[] positionOf;
+    private boolean located = false;
 
     public Individual(List<Depot> depots, int maxVehicles) {
         this.maxVehicles = maxVehicles;
         this.createDepots(depots);
     }
 
+    // Used by clone, takes ownership of depots that are already copies and the evaluation of the original
+    private Individual(int maxVehicles, List<Depot> depots, Individual original) {
+        this.maxVehicles = maxVehicles;
+        this.depots = depots;
+        this.fitness = original.fitness;
+        this.routeFitness = original.routeFitness;
+        this.distanceDeviation = original.distanceDeviation;
+        this.loadDeviation = original.loadDeviation;
+        this.dirty = original.dirty;
+    }
+
+    // One pass over the routes, reading the length and load every Vehicle keeps up to date
     public void calculateFitness(){
-        this.fitness = Fitness.getIndividualFitness(this);
+        int activeVehicles = 0;
+        double routeFitness = 0.0, distanceDeviation = 0.0, loadDeviation = 0.0;
+        for (Depot d: this.depots){
+            for (Vehicle v: d.getAllVehicles()){
+                if (!v.isActive()){
+                    continue;
+                }
+                double length = Fitness.getVehicleFitness(v, d);
+                activeVehicles++;
+                routeFitness += length;
+                if (d.maxDuration != 0 && length > d.maxDuration){
+                    distanceDeviation += length - d.maxDuration;
+                }
+                if (v.getLoad() > v.maxLoad){
+                    loadDeviation += v.getLoad() - v.maxLoad;
+                }
+            }
+        }
+        this.routeFitness = routeFitness;
+        this.distanceDeviation = distanceDeviation;
+        this.loadDeviation = loadDeviation;
+        this.fitness = Fitness.getFitness(activeVehicles, routeFitness, distanceDeviation, loadDeviation);
+        this.dirty = false;
+        if (Parameters.debug){
+            checkFitness();
+        }
+    }
+
+    // Compare against FlatEvaluator, which scores the same routes from scratch
+    private void checkFitness(){
+        double[] expected = new double[4];
+        Problem.current().evaluator.evaluate(this.toGiantTour(), expected);
+        if (Math.abs(expected[FlatEvaluator.fitness] - this.fitness) > 1e-6 * Math.max(1.0, Math.abs(this.fitness))){
+            throw new IllegalStateException(String.format("Fitness %.6f differs from FlatEvaluator %.6f", this.fitness, expected[FlatEvaluator.fitness]));
+        }
+    }
+
+    // Must be called by everything that changes the routes of this individual
+    public void markDirty(){
+        this.dirty = true;
+        this.located = false;
+    }
+
+    private void evaluateIfDirty(){
+        if (this.dirty){
+            this.calculateFitness();
+        }
     }
     
     public List<Depot> getDepots() {
@@ -29,31 +93,43 @@ public class Individual{
     }
 
     public Depot getDepotById(int id){
-        return this.depots.stream()
-                          .filter(d-> d.id == id)
-                          .findAny()
-                          .orElseThrow(() -> new IllegalArgumentException("Depot not found"));
+        for (Depot d: this.depots){
+            if (d.id == id){
+                return d;
+            }
+        }
+        throw new IllegalArgumentException("Depot not found");
     }
 
     public double getFitness(){
+        evaluateIfDirty();
         return this.fitness;
     }
 
+    public double getRouteFitness(){
+        evaluateIfDirty();
+        return this.routeFitness;
+    }
+
+    public int getMaxVehicles(){
+        return this.maxVehicles;
+    }
+
+    public GiantTour toGiantTour(){
+        return new GiantTour(this);
+    }
+
     public void createDepots(List<Depot> depots){
         List<Depot> depotResults = new ArrayList<>();
         for (Depot d: depots){
             Depot depotCopy = d.clone();
-            for (int i = 0;i < this.maxVehicles ;i++){
-                Vehicle v = new Vehicle(i+1, d.maxLoad, d.maxDuration);
-                try{
-                    depotCopy.addVehicle(v);
-                } catch (IllegalStateException e){
-                    ;
-                }
+            for (int i = depotCopy.getAllVehicles().size(); i < Math.min(this.maxVehicles, d.maxVehicles); i++){
+                depotCopy.addVehicle(new Vehicle(i+1, d.maxLoad, d.maxDuration));
             }
             depotResults.add(depotCopy);
         }
         this.depots = depotResults;
+        this.markDirty();
     }
 
     public int numberOfCustomers(){
@@ -67,64 +143,194 @@ public class Individual{
     }
 
     public double getDistanceDeviation(){
-        return this.depots.stream()
-                          .map(Depot::getDistanceDeviation)
-                          .reduce(0.0, (total, element) -> total + element);
+        evaluateIfDirty();
+        return this.distanceDeviation;
     }
 
     public double getLoadDeviation(){
-        return this.depots.stream()
-                          .map(Depot::getLoadDeviation)
-                          .reduce(0.0, (total, element) -> total + element);
+        evaluateIfDirty();
+        return this.loadDeviation;
+    }
+
+    public boolean isFeasible(){
+        return this.getDistanceDeviation() == 0.0 && this.getLoadDeviation() == 0.0;
     }
 
+    /**
+     * Assigns every customer to its closest depot and splits the customers of each depot in random order into routes with Split.
+     * Split has to keep the order, so with Parameters.forceMaxLoad it may find no packing of it even though the depot has room
+     * for its customers. Then a new order is drawn, and after Parameters.splitAttempts orders the customers are placed first fit.
+     * Returns false if first fit fails as well, the individual has no customers then and can be created again.
+     */
     public boolean createRandomIndividual(HashMap<Integer, Customer> customers){
         List<Customer> customerValues = new ArrayList<>(customers.values());
-        Collections.shuffle(customerValues);
-        for (Customer c: customerValues){
-            for (int id : c.candidateList) {
-                boolean notAssigned = true;
-                Depot depot = this.getDepotById(id);
-                int vehicleId = depot.getAllVehicles().size();
-                while (notAssigned) {
-                    try {
-                        depot.getVehicleById(vehicleId).visitCustomer(c);
-                        notAssigned = false;
-                    } catch(IllegalStateException e) {
-                        vehicleId--;
-                        if (vehicleId <= 0) break;
+        for (int attempt = 0; attempt < Parameters.splitAttempts; attempt++){
+            Utils.shuffle(customerValues);
+            if (splitDepots(assignToDepots(customerValues))){
+                return true;
+            }
+        }
+        Utils.shuffle(customerValues);
+        return createFirstFitIndividual(customerValues);
+    }
+
+    // Like createRandomIndividual, but each depot's customers are ordered by Construction.savings or Construction.sweep before Split.
+    // Returns false without trying other orders, the individual has no customers then
+    public boolean createConstructedIndividual(HashMap<Integer, Customer> customers, boolean savings){
+        Map<Integer, List<Customer>> orders = assignToDepots(new ArrayList<>(customers.values()));
+        for (Depot d: this.depots){
+            List<Customer> order = orders.get(d.id);
+            orders.put(d.id, savings ? Construction.savings(order, d) : Construction.sweep(order, d));
+        }
+        return splitDepots(orders);
+    }
+
+    // Customers by depot id in the given order, each at its closest depot. With Parameters.forceMaxLoad at the closest candidate whose vehicles still have room for it
+    private Map<Integer, List<Customer>> assignToDepots(List<Customer> customers){
+        Map<Integer, List<Customer>> orders = new HashMap<>();
+        Map<Integer, Integer> capacity = new HashMap<>();
+        for (Depot d: this.depots){
+            orders.put(d.id, new ArrayList<>());
+            capacity.put(d.id, d.getAllVehicles().size() * d.maxLoad);
+        }
+        for (Customer c: customers){
+            int depotId = c.getClosestDepot();
+            if (Parameters.forceMaxLoad){
+                for (int id : c.candidateList){
+                    if (capacity.get(id) >= c.demand){
+                        depotId = id;
+                        break;
                     }
                 }
-                if (!notAssigned) {
-                    break;
-                }
             }
+            capacity.merge(depotId, -c.demand, Integer::sum);
+            orders.get(depotId).add(c);
         }
-        if(this.numberOfCustomers() != customers.values().size()){
-            return false;
+        return orders;
+    }
+
+    // Every depot is split before any is filled, so if one does not fit the routes stay empty
+    private boolean splitDepots(Map<Integer, List<Customer>> orders){
+        Map<Integer, int[]> ends = new HashMap<>();
+        for (Depot d: this.depots){
+            int[] depotEnds = Split.split(orders.get(d.id), d, d.getAllVehicles().size());
+            if (depotEnds == null){
+                return false;
+            }
+            ends.put(d.id, depotEnds);
         }
+        for (Depot d: this.depots){
+            Split.apply(orders.get(d.id), d, ends.get(d.id));
+        }
+        this.markDirty();
+        this.calculateFitness();
+        return true;
+    }
+
+    // The placement used before Split: each customer goes to the last vehicle with room for it, trying its candidate depots in order
+    private boolean createFirstFitIndividual(List<Customer> customers){
+        for (Customer c: customers){
+            if (!placeFirstFit(c)){
+                clearRoutes();
+                return false;
+            }
+        }
+        this.markDirty();
         this.calculateFitness();
         return true;
     }
 
+    private boolean placeFirstFit(Customer c){
+        for (int id : c.candidateList){
+            List<Vehicle> vehicles = getDepotById(id).getAllVehicles();
+            for (int i = vehicles.size() - 1; i >= 0; i--){
+                Vehicle v = vehicles.get(i);
+                if (v.getLoad() + c.demand <= v.maxLoad){
+                    v.visitCustomer(c);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void clearRoutes(){
+        for (Depot d: this.depots){
+            for (Vehicle v: d.getAllVehicles()){
+                while (v.isActive()){
+                    v.removeCustomerAt(v.getCustomers().size() - 1);
+                }
+            }
+        }
+        this.markDirty();
+    }
+
     public boolean removeCustomer(Customer c){
+        DistanceMatrix distances = this.depots.get(0).getDistances(); // Every depot carries the distances of the instance
+        locate(distances);
+        int customer = distances.index(c);
+        Vehicle v = this.vehicleOf[customer];
+        if (v == null){
+            return false;
+        }
+        int position = this.positionOf[customer];
+        v.removeCustomerAt(position);
+        this.vehicleOf[customer] = null;
+        renumber(v, position, distances);
+        this.dirty = true;
+        return true;
+    }
+
+    // Insert the customer where Depot.bestInsertion finds it cheapest, the depot must be one of this individual's
+    public boolean insertAtMostFeasible(Depot depot, Customer c){
+        Tuple<Vehicle, Integer> insertion = depot.bestInsertion(c);
+        if (insertion == null){
+            return false;
+        }
+        insertion.x.insertCustomer(c, insertion.y);
+        if (this.located){
+            DistanceMatrix distances = depot.getDistances();
+            this.vehicleOf[distances.index(c)] = insertion.x;
+            renumber(insertion.x, insertion.y, distances);
+        }
+        this.dirty = true;
+        return true;
+    }
+
+    private void locate(DistanceMatrix distances){
+        if (this.located){
+            return;
+        }
+        if (this.vehicleOf == null){
+            this.vehicleOf = new Vehicle[distances.getNumberOfCustomers()];
+            this.positionOf = new int[distances.getNumberOfCustomers()];
+        } else {
+            Arrays.fill(this.vehicleOf, null);
+        }
         for (Depot d: this.depots){
-            boolean removed = d.removeCustomer(c);
-            if (removed){
-                return true;
+            for (Vehicle v: d.getAllVehicles()){
+                for (int i = 0; i < v.getCustomers().size(); i++){
+                    this.vehicleOf[distances.index(v.getCustomers().get(i))] = v;
+                }
+                renumber(v, 0, distances);
             }
         }
-        return false;
+        this.located = true;
     }
 
-    public Vehicle randomRoute(){
-        Depot d = this.getDepots().get(Utils.randomInt(this.getDepots().size()));
-        return d.getAllVehicles().get(Utils.randomInt(d.getAllVehicles().size()));
+    // Positions in the route from index on have shifted
+    private void renumber(Vehicle v, int from, DistanceMatrix distances){
+        List<Customer> route = v.getCustomers();
+        for (int i = from; i < route.size(); i++){
+            this.positionOf[distances.index(route.get(i))] = i;
+        }
     }
 
     public Tuple<Individual, Individual> crossover(Individual i){
         Individual offspring1 = this.clone();
         Individual offspring2 = i.clone();
+        offspring1.markDirty();
+        offspring2.markDirty();
         // Select a random depot for each offspring
         int randDepotIndex = Utils.randomInt(offspring1.getDepots().size());
         Depot depot1 = offspring1.getDepots().get(randDepotIndex);
@@ -151,13 +357,13 @@ public class Individual{
             }
         }
         for (Customer c: c1){
-            boolean inserted = depot2.insertAtMostFeasible(c);
+            boolean inserted = offspring2.insertAtMostFeasible(depot2, c);
             if (!inserted){
                 return null;
             }
         }
         for (Customer c: c2){
-            boolean inserted = depot1.insertAtMostFeasible(c);
+            boolean inserted = offspring1.insertAtMostFeasible(depot1, c);
             if (!inserted){
                 return null;
             }
@@ -165,16 +371,31 @@ public class Individual{
         return new Tuple<>(offspring1, offspring2);
     }
 
+    public void intraDepotMutation() {
+        Depot randomDepot = Utils.randomPick(this.depots, Depot::hasCustomers);
+        randomDepot.intraDepotMutation();
+        this.markDirty();
+    }
+
+    // Run LocalSearch on the routes of every depot
+    public void localSearch() {
+        boolean improved = false;
+        for (Depot d : this.depots) {
+            improved |= LocalSearch.improve(d);
+        }
+        if (improved) {
+            this.markDirty();
+        }
+    }
+
     public void interDepotMutation() {
+        this.markDirty();
         Depot randomDepot1 = getDepots().get(Utils.randomInt(getDepots().size()));
-        List<Customer> allSwappableCustomersDepot1 = Utils.allSwappableCustomers(randomDepot1);
-
-        while (allSwappableCustomersDepot1.size() < 1) {
+        while (!randomDepot1.hasCustomers()) {
             randomDepot1 = getDepots().get(Utils.randomInt(getDepots().size()));
-            allSwappableCustomersDepot1 = Utils.allSwappableCustomers(randomDepot1);
         }
         
-        Customer randomCustomer1 = Utils.randomPick(allSwappableCustomersDepot1, (customer -> customer.candidateList.size() > 1));
+        Customer randomCustomer1 = randomDepot1.randomSwappableCustomer();
         if (randomCustomer1 == null) return;
 
         int randomDepotId = randomDepot1.id;
@@ -185,14 +406,10 @@ public class Individual{
         testedDepotIds.add(randomCandidateDepotId);
         testedDepotIds.add(randomDepotId);
 
-        Map<Integer, Depot> depotMap = depots.stream()
-                                             .collect(Collectors.toMap(depot -> depot.id, depot -> depot));
-                                             
-        Depot randomDepot2 = depotMap.get(randomCandidateDepotId);
-
+        Depot randomDepot2;
         boolean mutationSuccessful = false;
         while(!mutationSuccessful) {
-            randomDepot2 = depotMap.get(randomCandidateDepotId);
+            randomDepot2 = getDepotById(randomCandidateDepotId);
             mutationSuccessful = randomDepot2.insertAtMostFeasible(randomCustomer1);
             if (mutationSuccessful) {
                 randomDepot1.removeCustomer(randomCustomer1);
@@ -210,11 +427,11 @@ public class Individual{
 
     @Override
     public Individual clone(){
-        List<Depot> depots = new ArrayList<>();
+        List<Depot> depots = new ArrayList<>(this.depots.size());
         for (Depot d:this.depots){
             depots.add(d.clone());
         }
-        return new Individual(depots, this.maxVehicles);
+        return new Individual(this.maxVehicles, depots, this);
     }
 
 }
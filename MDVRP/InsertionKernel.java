@@ -0,0 +1,40 @@
+/**
+ * Scores every insertion position of a route in one call, for Vehicle.bestInsertionIndex.
+ * The route is given as DistanceMatrix indices with the depot at both ends, and the length of the edge leaving each of them.
+ * This is the scalar loop. VectorInsertionKernel in MDVRP/vector computes the same with jdk.incubator.vector and is used
+ * instead when it has been compiled and the module is added at run time, otherwise this class is the fallback.
+ * Both return the same position for the same route.
+ */
+class InsertionKernel {
+
+    // Shared by all threads, chosen once when the class is loaded
+    static final InsertionKernel instance = load();
+
+    private static InsertionKernel load() {
+        if (Parameters.vectorInsertion) {
+            try {
+                return (InsertionKernel) Class.forName("VectorInsertionKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // Not compiled, jdk.incubator.vector not added, or no vector shape worth using on this machine
+            }
+        }
+        return new InsertionKernel();
+    }
+
+    /**
+     * First of the positions 0..positions-1 where inserting node between nodes[i] and nodes[i+1] adds the least length,
+     * which is distance(nodes[i], node) + distance(node, nodes[i+1]) - edges[i].
+     */
+    int bestPosition(DistanceMatrix distances, int node, int[] nodes, double[] edges, int positions) {
+        double lowestDiff = Double.MAX_VALUE;
+        int index = -1;
+        for (int i = 0; i < positions; i++) {
+            double diff = distances.get(nodes[i], node) + distances.get(node, nodes[i+1]) - edges[i];
+            if (diff < lowestDiff) {
+                lowestDiff = diff;
+                index = i;
+            }
+        }
+        return index;
+    }
+}
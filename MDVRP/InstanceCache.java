@@ -0,0 +1,126 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import data_classes.Customer;
+
+/**
+ * Precompiled binary form of problem instances in MDVRP/cache, used by Problem.load when Parameters.instanceCache is set.
+ * Next to the parsed instance it stores what Problem derives from it: the distance table (for dense instances),
+ * the nearest neighbour lists and the depot candidates of every customer, so a repeat run only maps one file.
+ * A cache file is rebuilt when its dataset file or one of the parameters it depends on has changed.
+ */
+public class InstanceCache {
+
+    private static final int magic = 0x4d445652; // "MDVR"
+    private static final int version = 1; // Bump when the layout or the way Problem derives its parts changes
+
+    public static Problem load(String name, String filename) {
+        Path source = Paths.get(filename);
+        Path cache = Paths.get("MDVRP/cache", name + ".bin");
+        try {
+            Problem problem = read(name, source, cache);
+            if (problem != null) {
+                return problem;
+            }
+        } catch (IOException | RuntimeException error) {
+            System.out.println("Rebuilding " + cache + ": " + error);
+        }
+        DataSetIO dataSet = new DataSetIO();
+        dataSet.readDataFile(filename);
+        Problem problem = new Problem(name, dataSet);
+        try {
+            write(dataSet, problem, source, cache);
+        } catch (IOException error) {
+            System.out.println(error.toString());
+        }
+        return problem;
+    }
+
+    // Returns null if there is no cache file for the current dataset file and parameters
+    private static Problem read(String name, Path source, Path cache) throws IOException {
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != magic || buffer.getInt() != version
+                    || buffer.getLong() != Files.size(source) || buffer.getLong() != Files.getLastModifiedTime(source).toMillis()
+                    || buffer.getDouble() != Parameters.swappableCustomerDistance || buffer.getInt() != Parameters.neighbourhoodSize
+                    || buffer.getInt() != DistanceMatrix.maxDenseNodes) {
+                return null;
+            }
+            DataSetIO dataSet = new DataSetIO();
+            dataSet.read(buffer);
+            int[] candidateCounts = readInts(buffer, dataSet.getNumOfCustomers());
+            int[][] candidates = new int[candidateCounts.length][];
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] = readInts(buffer, candidateCounts[i]);
+            }
+            int[] neighbours = readInts(buffer, buffer.getInt());
+            double[] table = null;
+            int tableLength = buffer.getInt();
+            if (tableLength > 0) {
+                table = new double[tableLength];
+                buffer.asDoubleBuffer().get(table);
+                buffer.position(buffer.position() + Double.BYTES * tableLength);
+            }
+            return new Problem(name, dataSet, table, neighbours, candidates);
+        }
+    }
+
+    // Written to a temporary file first, so concurrent runs never map a half written cache
+    private static void write(DataSetIO dataSet, Problem problem, Path source, Path cache) throws IOException {
+        Files.createDirectories(cache.getParent());
+        Path temporary = Files.createTempFile(cache.getParent(), cache.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeLong(Files.size(source));
+            out.writeLong(Files.getLastModifiedTime(source).toMillis());
+            out.writeDouble(Parameters.swappableCustomerDistance);
+            out.writeInt(Parameters.neighbourhoodSize);
+            out.writeInt(DistanceMatrix.maxDenseNodes);
+            dataSet.write(out);
+            Customer[] byIndex = new Customer[problem.customers.size()];
+            for (Customer customer : problem.customers.values()) {
+                byIndex[problem.distances.index(customer)] = customer;
+            }
+            for (Customer customer : byIndex) {
+                out.writeInt(customer.candidateList.size());
+            }
+            for (Customer customer : byIndex) {
+                for (int depotId : customer.candidateList) {
+                    out.writeInt(depotId);
+                }
+            }
+            int[] neighbours = problem.spatialIndex.getNeighbours();
+            out.writeInt(neighbours.length);
+            for (int neighbour : neighbours) {
+                out.writeInt(neighbour);
+            }
+            double[] table = problem.distances.getTable();
+            out.writeInt(table == null ? 0 : table.length);
+            if (table != null) {
+                for (double distance : table) {
+                    out.writeDouble(distance);
+                }
+            }
+        }
+        Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static int[] readInts(ByteBuffer buffer, int length) {
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + Integer.BYTES * length);
+        return values;
+    }
+}
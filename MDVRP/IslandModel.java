@@ -0,0 +1,172 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import data_classes.Tuple;
+
+/**
+ * Evolves Parameters.islandCount independent populations, each on its own thread.
+ * Every Parameters.migrationInterval generations all islands meet at a barrier, where each island sends copies of its
+ * Parameters.migrationSize best individuals to the next island in a ring (or a random island), replacing its worst individuals.
+ */
+public class IslandModel {
+
+    private final Problem problem;
+    private final List<GeneticAlgorithm> islands = new ArrayList<>();
+    private final CyclicBarrier barrier;
+    private final List<Tuple<Integer, Double>> generationalFitness = new ArrayList<>();
+    // Only written by the barrier action, so every island sees the same value after the barrier
+    private volatile boolean finished = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public IslandModel(Problem problem) {
+        this.problem = problem;
+        for (int i = 0; i < Parameters.islandCount; i++) {
+            islands.add(new GeneticAlgorithm(problem, i));
+        }
+        this.barrier = new CyclicBarrier(islands.size(), this::migrate);
+        recordGenerationalFitness();
+    }
+
+    // Continue from a checkpoint written by migrate
+    public IslandModel(Problem problem, Checkpoint checkpoint) {
+        this.problem = problem;
+        for (Checkpoint.Island state : checkpoint.islands) {
+            islands.add(new GeneticAlgorithm(problem, state, new ArrayList<>()));
+        }
+        this.barrier = new CyclicBarrier(islands.size(), this::migrate);
+        generationalFitness.addAll(checkpoint.generationalFitness);
+    }
+
+    public void run() {
+        ExecutorService islandThreads = Executors.newFixedThreadPool(islands.size());
+        List<Callable<Void>> evolutions = new ArrayList<>();
+        for (GeneticAlgorithm island : islands) {
+            // Bound so migration has the problem instance on whichever island thread runs it
+            evolutions.add(Problem.bind(problem, () -> {
+                evolve(island);
+                return null;
+            }));
+        }
+        try {
+            for (Future<Void> evolution : islandThreads.invokeAll(evolutions)) {
+                evolution.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Island failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            islandThreads.shutdownNow();
+            stopped.countDown();
+        }
+    }
+
+    // Ask every island to stop, they all finish their current generation and meet at the barrier once more
+    public void requestStop() {
+        islands.forEach(GeneticAlgorithm::requestStop);
+    }
+
+    public void awaitStopped() throws InterruptedException {
+        stopped.await(Parameters.stopTimeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    private void evolve(GeneticAlgorithm island) throws InterruptedException, BrokenBarrierException {
+        while (!finished) {
+            for (int i = 0; i < Parameters.migrationInterval && !island.isFinished(); i++) {
+                island.step();
+            }
+            barrier.await();
+        }
+    }
+
+    // Barrier action, runs on one thread while every island waits, so the islands can be checkpointed in a consistent state
+    private void migrate() {
+        // The barrier action runs on whichever island arrives last, so migration has its own streams
+        SplittableRandom migrationRandom = Utils.stream(-1, islands.get(0).getGeneration());
+        List<List<Individual>> emigrants = new ArrayList<>();
+        for (GeneticAlgorithm island : islands) {
+            List<Individual> elites = new ArrayList<>();
+            for (int i = 0; i < Math.min(Parameters.migrationSize, island.getPopulation().getIndividuals().size()); i++) {
+                elites.add(island.getPopulation().getIndividualByRankAndDeviation(i, false).clone());
+            }
+            emigrants.add(elites);
+        }
+        for (int i = 0; i < islands.size(); i++) {
+            int target = (i + 1) % islands.size();
+            if (Parameters.randomMigrationTopology && islands.size() > 2) {
+                target = migrationRandom.nextInt(islands.size() - 1);
+                if (target >= i) {
+                    target++;
+                }
+            }
+            islands.get(target).getPopulation().immigrate(emigrants.get(i));
+        }
+        finished = islands.stream().anyMatch(GeneticAlgorithm::isFinished);
+        recordGenerationalFitness();
+        if (!finished && Checkpoint.isDue(islands.get(0).getGeneration())) {
+            List<Checkpoint.Island> states = new ArrayList<>();
+            for (GeneticAlgorithm island : islands) {
+                states.add(island.snapshot());
+            }
+            new Checkpoint(problem.name, Utils.getSeed(), generationalFitness, states).writeAsync();
+        }
+        if (Metrics.isDue(islands.get(0).getGeneration()) || (finished && Metrics.enabled)) {
+            getBestIsland().report();
+        }
+    }
+
+    private void recordGenerationalFitness() {
+        GeneticAlgorithm best = getBestIsland();
+        generationalFitness.add(new Tuple<>(best.getGeneration(), best.getPopulation().getIndividualByRankAndDeviation(0, false).getRouteFitness()));
+    }
+
+    private GeneticAlgorithm getBestIsland() {
+        GeneticAlgorithm best = islands.get(0);
+        for (GeneticAlgorithm island : islands) {
+            if (island.getPopulation().getIndividualByRankAndDeviation(0, false).getFitness() < best.getPopulation().getIndividualByRankAndDeviation(0, false).getFitness()) {
+                best = island;
+            }
+        }
+        return best;
+    }
+
+    // Route fitness of getBestSolution, Double.MAX_VALUE if no island has found a feasible solution yet
+    public double getBestSolutionFitness() {
+        double bestFitness = Double.MAX_VALUE;
+        for (GeneticAlgorithm island : islands) {
+            bestFitness = Math.min(bestFitness, island.getBestSolutionFitness());
+        }
+        return bestFitness;
+    }
+
+    // Best feasible solution found by any island
+    public GiantTour getBestSolution() {
+        GiantTour best = null;
+        double bestFitness = Double.MAX_VALUE;
+        for (GeneticAlgorithm island : islands) {
+            if (island.getBestSolution() != null && island.getBestSolutionFitness() < bestFitness) {
+                best = island.getBestSolution();
+                bestFitness = island.getBestSolutionFitness();
+            }
+        }
+        return best;
+    }
+
+    public Population getPopulation() {
+        return getBestIsland().getPopulation();
+    }
+
+    public List<Tuple<Integer, Double>> getGenerationalFitness() {
+        return generationalFitness;
+    }
+}
@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import data_classes.Customer;
+
+/**
+ * Memetic improvement of the routes in a single depot by variable neighbourhood descent over
+ * intra-route 2-opt and Or-opt, and inter-route relocate and exchange restricted to the nearest neighbours from SpatialIndex.
+ * Every candidate move is evaluated in constant time from the DistanceMatrix and the cached length and load of each Vehicle,
+ * and the first improving move is applied before searching again.
+ */
+public class LocalSearch {
+
+    private static final double epsilon = 1e-9;
+
+    // Returns true if any move was applied
+    public static boolean improve(Depot depot) {
+        DistanceMatrix distances = depot.getDistances();
+        // Vehicle index and route position of every customer in the depot, -1 for customers in other depots
+        int[] vehicleOf = new int[distances.getNumberOfCustomers()];
+        int[] positionOf = new int[distances.getNumberOfCustomers()];
+        Arrays.fill(vehicleOf, -1);
+        int moves = 0;
+        while (moves < Parameters.localSearchMaxMoves
+                && (twoOpt(depot, distances) || orOpt(depot, distances) 
+                    || relocate(depot, distances, locate(depot, distances, vehicleOf, positionOf), positionOf) 
+                    || exchange(depot, distances, vehicleOf, positionOf))) {
+            moves++;
+        }
+        return moves > 0;
+    }
+
+    private static int[] locate(Depot depot, DistanceMatrix distances, int[] vehicleOf, int[] positionOf) {
+        List<Vehicle> vehicles = depot.getAllVehicles();
+        for (int v = 0; v < vehicles.size(); v++) {
+            List<Customer> route = vehicles.get(v).getCustomers();
+            for (int i = 0; i < route.size(); i++) {
+                vehicleOf[distances.index(route.get(i))] = v;
+                positionOf[distances.index(route.get(i))] = i;
+            }
+        }
+        return vehicleOf;
+    }
+
+    /**
+     * Reverse the segment between two positions of a route.
+     * Only the edges into and out of the segment change, so the delta is d(a,c) + d(b,e) - d(a,b) - d(c,e).
+     */
+    private static boolean twoOpt(Depot depot, DistanceMatrix distances) {
+        int depotIndex = distances.index(depot);
+        for (Vehicle v : depot.getAllVehicles()) {
+            List<Customer> route = v.getCustomers();
+            for (int i = 0; i < route.size() - 1; i++) {
+                int a = node(route, i - 1, depotIndex, distances), b = node(route, i, depotIndex, distances);
+                for (int j = i + 1; j < route.size(); j++) {
+                    int c = node(route, j, depotIndex, distances), e = node(route, j + 1, depotIndex, distances);
+                    double delta = distances.get(a, c) + distances.get(b, e) - distances.get(a, b) - distances.get(c, e);
+                    if (delta < -epsilon) {
+                        v.reverseSegment(i, j);
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Move a segment of up to three customers to another place in the same route, possibly reversed
+    private static boolean orOpt(Depot depot, DistanceMatrix distances) {
+        int depotIndex = distances.index(depot);
+        for (Vehicle v : depot.getAllVehicles()) {
+            // The segment goes back into the same route, which addCustomersToRoute refuses with forceMaxLoad once the route is overloaded
+            if (Parameters.forceMaxLoad && v.getLoad() > v.maxLoad) {
+                continue;
+            }
+            List<Customer> route = v.getCustomers();
+            int n = route.size();
+            for (int k = 1; k <= Math.min(3, n - 1); k++) {
+                for (int i = 0; i + k <= n; i++) {
+                    int a = node(route, i - 1, depotIndex, distances), s1 = node(route, i, depotIndex, distances);
+                    int s2 = node(route, i + k - 1, depotIndex, distances), e = node(route, i + k, depotIndex, distances);
+                    double removal = distances.get(a, s1) + distances.get(s2, e) - distances.get(a, e);
+                    for (int q = 0; q <= n; q++) {
+                        if (q >= i && q <= i + k) {
+                            continue;
+                        }
+                        int x = node(route, q - 1, depotIndex, distances), y = node(route, q, depotIndex, distances);
+                        double forward = distances.get(x, s1) + distances.get(s2, y) - distances.get(x, y);
+                        double reversed = distances.get(x, s2) + distances.get(s1, y) - distances.get(x, y);
+                        if (Math.min(forward, reversed) - removal < -epsilon) {
+                            List<Customer> segment = new ArrayList<>(route.subList(i, i + k));
+                            for (int t = 0; t < k; t++) {
+                                v.removeCustomerAt(i);
+                            }
+                            if (reversed < forward) {
+                                Collections.reverse(segment);
+                            }
+                            v.addCustomersToRoute(segment, q < i ? q : q - k);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move one customer to another route of the depot, next to one of its nearest neighbours (or into an empty route).
+     * Only the neighbours from the SpatialIndex are tried, which keeps the move granular on large depots.
+     */
+    private static boolean relocate(Depot depot, DistanceMatrix distances, int[] vehicleOf, int[] positionOf) {
+        SpatialIndex index = Fitness.getSpatialIndex();
+        int depotIndex = distances.index(depot);
+        List<Vehicle> vehicles = depot.getAllVehicles();
+        Vehicle empty = null;
+        for (Vehicle v : vehicles) {
+            if (v.getCustomers().size() == 0) {
+                empty = v;
+                break;
+            }
+        }
+        for (int vf = 0; vf < vehicles.size(); vf++) {
+            Vehicle from = vehicles.get(vf);
+            List<Customer> routeFrom = from.getCustomers();
+            int n = routeFrom.size();
+            double costFrom = routeCost(from, from.getRouteLength(), from.getLoad(), n > 0);
+            for (int i = 0; i < n; i++) {
+                Customer customer = routeFrom.get(i);
+                int a = node(routeFrom, i - 1, depotIndex, distances), b = node(routeFrom, i, depotIndex, distances);
+                int c = node(routeFrom, i + 1, depotIndex, distances);
+                double lengthFrom = n == 1 ? 0.0 : from.getRouteLength() - distances.get(a, b) - distances.get(b, c) + distances.get(a, c);
+                double gainFrom = routeCost(from, lengthFrom, from.getLoad() - customer.demand, n > 1) - costFrom;
+                for (int r = 0; r <= index.getNeighbourhoodSize(); r++) {
+                    Vehicle to;
+                    int firstPosition;
+                    if (r < index.getNeighbourhoodSize()) {
+                        int neighbour = index.getNeighbour(b, r);
+                        if (vehicleOf[neighbour] < 0 || vehicleOf[neighbour] == vf) {
+                            continue;
+                        }
+                        to = vehicles.get(vehicleOf[neighbour]);
+                        firstPosition = positionOf[neighbour];
+                    } else if (empty != null && n > 1) {
+                        to = empty;
+                        firstPosition = 0;
+                    } else {
+                        continue;
+                    }
+                    if (Parameters.forceMaxLoad && to.getLoad() + customer.demand > to.maxLoad) {
+                        continue;
+                    }
+                    List<Customer> routeTo = to.getCustomers();
+                    double costTo = routeCost(to, to.getRouteLength(), to.getLoad(), routeTo.size() > 0);
+                    // Before or after the neighbour
+                    for (int q = firstPosition; q <= Math.min(firstPosition + 1, routeTo.size()); q++) {
+                        int x = node(routeTo, q - 1, depotIndex, distances), y = node(routeTo, q, depotIndex, distances);
+                        double insertion = distances.get(x, b) + distances.get(b, y) - distances.get(x, y);
+                        double delta = gainFrom + routeCost(to, to.getRouteLength() + insertion, to.getLoad() + customer.demand, true) - costTo;
+                        if (delta < -epsilon) {
+                            from.removeCustomerAt(i);
+                            to.insertCustomer(customer, q);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Swap a customer with the predecessor or successor of one of its nearest neighbours in another route of the depot
+    private static boolean exchange(Depot depot, DistanceMatrix distances, int[] vehicleOf, int[] positionOf) {
+        SpatialIndex index = Fitness.getSpatialIndex();
+        int depotIndex = distances.index(depot);
+        List<Vehicle> vehicles = depot.getAllVehicles();
+        for (int va = 0; va < vehicles.size(); va++) {
+            Vehicle first = vehicles.get(va);
+            List<Customer> routeFirst = first.getCustomers();
+            double costFirst = routeCost(first, first.getRouteLength(), first.getLoad(), true);
+            for (int i = 0; i < routeFirst.size(); i++) {
+                Customer x = routeFirst.get(i);
+                int a = node(routeFirst, i - 1, depotIndex, distances), b = node(routeFirst, i, depotIndex, distances);
+                int c = node(routeFirst, i + 1, depotIndex, distances);
+                for (int r = 0; r < index.getNeighbourhoodSize(); r++) {
+                    int neighbour = index.getNeighbour(b, r);
+                    if (vehicleOf[neighbour] < 0 || vehicleOf[neighbour] == va) {
+                        continue;
+                    }
+                    Vehicle second = vehicles.get(vehicleOf[neighbour]);
+                    List<Customer> routeSecond = second.getCustomers();
+                    double costSecond = routeCost(second, second.getRouteLength(), second.getLoad(), true);
+                    for (int j = positionOf[neighbour] - 1; j <= positionOf[neighbour] + 1; j += 2) {
+                        if (j < 0 || j >= routeSecond.size()) {
+                            continue;
+                        }
+                        Customer y = routeSecond.get(j);
+                        int loadFirst = first.getLoad() - x.demand + y.demand;
+                        int loadSecond = second.getLoad() - y.demand + x.demand;
+                        if (Parameters.forceMaxLoad && (loadFirst > first.maxLoad || loadSecond > second.maxLoad)) {
+                            continue;
+                        }
+                        int e = node(routeSecond, j - 1, depotIndex, distances), f = node(routeSecond, j, depotIndex, distances);
+                        int g = node(routeSecond, j + 1, depotIndex, distances);
+                        double lengthFirst = first.getRouteLength() - distances.get(a, b) - distances.get(b, c) + distances.get(a, f) + distances.get(f, c);
+                        double lengthSecond = second.getRouteLength() - distances.get(e, f) - distances.get(f, g) + distances.get(e, b) + distances.get(b, g);
+                        double delta = routeCost(first, lengthFirst, loadFirst, true) + routeCost(second, lengthSecond, loadSecond, true)
+                                     - costFirst - costSecond;
+                        if (delta < -epsilon) {
+                            first.setCustomer(i, y);
+                            second.setCustomer(j, x);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Contribution of a single route to Fitness.getIndividualFitness
+    private static double routeCost(Vehicle vehicle, double length, int load, boolean active) {
+        if (!active) {
+            return 0.0;
+        }
+        double durationDeviation = vehicle.maxDuration != 0 && length > vehicle.maxDuration ? length - vehicle.maxDuration : 0.0;
+        double loadDeviation = load > vehicle.maxLoad ? load - vehicle.maxLoad : 0.0;
+        return Fitness.getFitness(1, length, durationDeviation, loadDeviation);
+    }
+
+    // Distance matrix ordinal of a route position, positions before and after the route are the depot
+    private static int node(List<Customer> route, int position, int depotIndex, DistanceMatrix distances) {
+        return position < 0 || position >= route.size() ? depotIndex : distances.index(route.get(position));
+    }
+}
@@ -1,19 +1,68 @@
+import java.util.Arrays;
+import java.util.List;
+
+import data_classes.Tuple;
+
 class Main{
+    // Pass --resume to continue from the latest checkpoint of the problem, if there is one
     public static void main(String[] args){
         long startTime = System.nanoTime();
-        DataSetIO dataSet = new DataSetIO();
-        dataSet.readDataFile("MDVRP/dataset/"+Parameters.problem);
-        GeneticAlgorithm ga = new GeneticAlgorithm(dataSet);
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            public void run() {
-                Population p = ga.getPopulation();
-                DataSetIO.writeResults(p.getIndividualByRankAndDeviation(0, true), "MDVRP/results/"+Parameters.problem);
-                DataSetIO.writeGenerations(ga.getGenerationalFitness(), "MDVRP/generations/"+Parameters.problem);
-                long endTime = System.nanoTime();
-                System.out.println(String.format("%s completed in %.2f seconds", Parameters.problem, (endTime - startTime) / Math.pow(10,9)));
+        Checkpoint checkpoint = Arrays.asList(args).contains("--resume") ? Checkpoint.read(Parameters.problem) : null;
+        if (checkpoint != null){
+            if (checkpoint.islands.size() != Parameters.islandCount){
+                throw new IllegalStateException("Checkpoint has " + checkpoint.islands.size() + " islands, Parameters.islandCount is " + Parameters.islandCount);
             }
-        });
-        ga.run();
+            Utils.setSeed(checkpoint.seed);
+            System.out.println("Resuming from generation " + checkpoint.islands.get(0).generation);
+        }
+        System.out.println("Seed: " + Utils.getSeed());
+        Problem problem = Problem.load(Parameters.problem, "MDVRP/dataset/"+Parameters.problem);
+        Runtime.getRuntime().addShutdownHook(new Thread(Checkpoint::finishWrites));
+        if (Parameters.islandCount > 1){
+            IslandModel islands = checkpoint != null ? new IslandModel(problem, checkpoint) : new IslandModel(problem);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    // On a kill the islands finish their generation first, so the output is the best found so far
+                    islands.requestStop();
+                    try {
+                        islands.awaitStopped();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    writeOutput(problem, islands.getBestSolution(), islands.getPopulation(), islands.getGenerationalFitness(), startTime);
+                }
+            });
+            islands.run();
+        } else {
+            GeneticAlgorithm ga = checkpoint != null ? new GeneticAlgorithm(problem, checkpoint.islands.get(0), checkpoint.generationalFitness) 
+                                                     : new GeneticAlgorithm(problem);
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run() {
+                    // On a kill the GA finishes its generation first, so the output is the best found so far
+                    ga.requestStop();
+                    try {
+                        ga.awaitStopped();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    writeOutput(problem, ga.getBestSolution(), ga.getPopulation(), ga.getGenerationalFitness(), startTime);
+                }
+            });
+            ga.run();
+        }
         System.exit(0);
     }
-}
\ No newline at end of file
+
+    // Write MDVRP/results/<problem> and MDVRP/generations/<problem>, falling back to the best population member if no solution is feasible
+    static void writeOutput(Problem problem, GiantTour best, Population p, List<Tuple<Integer, Double>> generationalFitness, long startTime){
+        Problem.set(problem);
+        if (best != null){
+            DataSetIO.writeResults(best, "MDVRP/results/"+problem.name);
+        } else {
+            DataSetIO.writeResults(p.getIndividualByRankAndDeviation(0, true), "MDVRP/results/"+problem.name);
+        }
+        DataSetIO.writeGenerations(generationalFitness, "MDVRP/generations/"+problem.name);
+        long endTime = System.nanoTime();
+        System.out.println(String.format("%s completed in %.2f seconds", problem.name, (endTime - startTime) / Math.pow(10,9)));
+    }
+}
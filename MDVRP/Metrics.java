@@ -0,0 +1,121 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and timers for the phases of the GA on one problem instance, shared by all islands solving it.
+ * Every Parameters.metricsInterval generations the change since the previous export is appended as a CSV line
+ * to MDVRP/metrics/<problem>.csv. An interval of 0 turns recording off, so the hot paths skip even System.nanoTime.
+ * Values are LongAdders, so tasks on the executor update them without contending. Timers sum the nanoseconds of all threads,
+ * so phases that run in parallel add up to more than the wall clock time, and insertion time is also part of crossover and mutation.
+ */
+public class Metrics {
+
+    public enum Metric {
+        selectionNanos, crossoverNanos, mutationNanos, insertionNanos, localSearchNanos, evaluationNanos, survivorSelectionNanos,
+        evaluations, crossoverRetries, tasks, queuedTasks
+    }
+
+    public static final boolean enabled = Parameters.metricsInterval > 0;
+    // Not a constant expression, so javac does not flag the modulo in isDue as a division by zero when metrics are off
+    private static final int interval = Math.max(1, Parameters.metricsInterval);
+
+    private final LongAdder[] totals = new LongAdder[Metric.values().length];
+    // Most tasks waiting in the executor seen by a task starting since the last export
+    private final LongAccumulator maxQueuedTasks = new LongAccumulator(Math::max, 0);
+    private final long[] exported = new long[Metric.values().length];
+    private final long startTime = System.nanoTime();
+    private long exportTime = startTime;
+    private boolean headerWritten = false;
+
+    public Metrics() {
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new LongAdder();
+        }
+    }
+
+    public static boolean isDue(int generation) {
+        return enabled && generation % interval == 0;
+    }
+
+    // Start of a timed section, pass the result to stop
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void stop(Metric timer, long start) {
+        if (enabled) {
+            totals[timer.ordinal()].add(System.nanoTime() - start);
+        }
+    }
+
+    public void add(Metric counter, long amount) {
+        if (enabled) {
+            totals[counter.ordinal()].add(amount);
+        }
+    }
+
+    // Called as a task starts on the executor, records how many tasks are still waiting for a thread
+    public void sampleQueue(ForkJoinPool pool) {
+        if (enabled) {
+            long queued = pool.getQueuedTaskCount() + pool.getQueuedSubmissionCount();
+            totals[Metric.tasks.ordinal()].increment();
+            totals[Metric.queuedTasks.ordinal()].add(queued);
+            maxQueuedTasks.accumulate(queued);
+        }
+    }
+
+    public long get(Metric metric) {
+        return totals[metric.ordinal()].sum();
+    }
+
+    // Append what was recorded since the last export, the first export of a run replaces the file
+    public synchronized void export(String problem, int generation) {
+        long now = System.nanoTime();
+        long[] delta = new long[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            long total = totals[i].sum();
+            delta[i] = total - exported[i];
+            exported[i] = total;
+        }
+        double seconds = (now - exportTime) / Math.pow(10, 9);
+        exportTime = now;
+        List<String> lines = new ArrayList<>();
+        if (!headerWritten) {
+            StringBuilder header = new StringBuilder("generation,seconds,evaluationsPerSecond");
+            for (Metric metric : Metric.values()) {
+                header.append(',').append(metric);
+            }
+            lines.add(header.append(",meanQueuedTasks,maxQueuedTasks").toString());
+        }
+        StringBuilder line = new StringBuilder();
+        line.append(generation).append(',').append(String.format("%.3f", (now - startTime) / Math.pow(10, 9)));
+        line.append(',').append(String.format("%.1f", seconds > 0 ? delta[Metric.evaluations.ordinal()] / seconds : 0.0));
+        for (long value : delta) {
+            line.append(',').append(value);
+        }
+        long tasks = delta[Metric.tasks.ordinal()];
+        line.append(',').append(String.format("%.2f", tasks > 0 ? (double) delta[Metric.queuedTasks.ordinal()] / tasks : 0.0));
+        line.append(',').append(maxQueuedTasks.getThenReset());
+        lines.add(line.toString());
+        Path path = Paths.get("MDVRP/metrics", problem + ".csv");
+        try {
+            Files.createDirectories(path.getParent());
+            if (headerWritten) {
+                Files.write(path, lines, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } else {
+                Files.write(path, lines);
+                headerWritten = true;
+            }
+        } catch (IOException error) {
+            System.out.println(error.toString());
+        }
+    }
+}
@@ -2,7 +2,11 @@ public class Parameters {
     
     static final String problem = "2";
     static final int populationSize = 20;
+    static final double seededShare = 0.2; // Share of the initial population built by the savings and sweep heuristics, the rest is random
     static final int generationSpan = 10000;
+    static final double timeBudgetSeconds = 0; // Wall clock time a run may take, 0 for no limit
+    static final int stagnationGenerations = 0; // Stop after this many generations without improving the best fitness, 0 to never stop early
+    static final int stopTimeoutSeconds = 30; // Time a shutdown hook waits for the current generation to finish before writing results
     static final int eliteSize = 2;
     static final int tournamentSize = 2;
     static final int parentSelectionSize = 10;
@@ -11,12 +15,29 @@ public class Parameters {
     static final double mutationProbability = 0.35;
     static final double interDepotMutationRate = 6;
     static final double swappableCustomerDistance = 0.9;
+    static final double localSearchRate = 0; // Share of offspring improved by LocalSearch, 0 turns the stage off
+    static final int localSearchMaxMoves = 1000; // Improving moves applied to a depot per LocalSearch
+    static final int neighbourhoodSize = 20; // Nearest customers considered by the granular moves between routes in LocalSearch
 
     static final double alpha = 10; // Discount factor for number of active vehicles
     static final double beta = 0.01; // Discount factor for total route length
     static final double durationPenalty = 20;
     static final double loadPenalty = 20;
     static final boolean forceMaxLoad = false;
+    static final int splitAttempts = 10; // Random orders Split tries with forceMaxLoad before a random individual is placed first fit
+    static final int initialAttempts = 100; // Random individuals tried for a slot of the initial population with forceMaxLoad before giving up
     static final int threadPoolSize = 10;
+    static final int concurrentInstances = 4; // Problem instances BatchRunner solves at the same time, all sharing the thread pool
+    static final long seed = -1; // Fixed seed to replay a run exactly, -1 picks a new seed every run
+    static final int islandCount = 1; // Populations evolved in parallel, 1 runs a single population without migration
+    static final int migrationInterval = 50; // Generations between migrations in the island model
+    static final int migrationSize = 2; // Elite individuals sent from each island per migration
+    static final int checkpointInterval = 0; // Generations between checkpoints in MDVRP/checkpoints, 0 turns them off. Islands are only checkpointed when they migrate
+    static final boolean randomMigrationTopology = false; // Send migrants to a random island instead of the next one in the ring
+    static final int metricsInterval = 0; // Generations between exports to MDVRP/metrics and lines of progress, 0 turns both off
+    static final boolean debug = false; // Check cached fitness against a FlatEvaluator evaluation of the routes
+    static final boolean vectorInsertion = true; // Score insertion positions with the Vector API kernel in MDVRP/vector when it is compiled and jdk.incubator.vector is added
+    static final int maxDenseDistanceNodes = 3000; // Larger instances compute distances on demand instead of storing n^2 doubles, 3000 nodes take 72 MB
+    static final boolean instanceCache = false; // Keep a precompiled binary copy of every loaded instance in MDVRP/cache for faster start up
 
 }
@@ -1,42 +1,28 @@
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import data_classes.*;
 
 public class Population{
 
-    public static ExecutorService executor = 
-        new ThreadPoolExecutor(
-            Parameters.threadPoolSize, 
-            Parameters.threadPoolSize, 
-            30, TimeUnit.SECONDS, 
-            new ArrayBlockingQueue<>(Parameters.threadPoolSize),
-            new ThreadPoolExecutor.CallerRunsPolicy()
-        );
+    // Work-stealing pool shared by every instance being solved, idle threads take queued tasks from busy ones
+    public static final ForkJoinPool executor = new ForkJoinPool(Parameters.threadPoolSize);
     
 	private List<Individual> individuals = new ArrayList<>();
-    private int maxNumOfVehicles;
+    // Rankings of the current individuals, rebuilt lazily after the population changes
+    private List<Individual> rankedByFitness, rankedByRouteFitness, rankedFeasible;
+    private final Problem problem;
 
-    public static List<Depot> depots;
-    public static HashMap<Integer, Customer> customers;
-
-    public void setDepots(List<Depot> newDepots) {
-        depots = newDepots;
-    }
-    public void setCustomers(HashMap<Integer, Customer> newCustomers) {
-        customers = newCustomers;
-    }
-    
-    public Population(int maxNumOfVehicles) {
-        this.maxNumOfVehicles = maxNumOfVehicles;
+    public Population(Problem problem) {
+        this.problem = problem;
     }
 
     public List<Individual> getIndividuals(){
@@ -44,73 +30,119 @@ public class Population{
     }
 
     public Individual getIndividualByRank(int index){
-        List<Individual> copy = new ArrayList<>(individuals);
-        copy.sort((a,b) -> Double.compare(Fitness.getIndividualRouteFitness(a), Fitness.getIndividualRouteFitness(b)));
-        return copy.get(index);
+        buildRanking();
+        return rankedByRouteFitness.get(index);
+    }
+
+    public Individual getIndividualByFitnessRank(int index){
+        buildRanking();
+        return rankedByFitness.get(index);
     }
 
     public Individual getIndividualByRankAndDeviation(int index, boolean correctMax){
-        List<Individual> copy;
-        if (!correctMax){
-            copy = new ArrayList<>(individuals);
-            copy.sort((a,b) -> Double.compare(Fitness.getIndividualFitness(a), Fitness.getIndividualFitness(b)));
-        } else {
-            copy = new ArrayList<>(this.getIndividualsWithCorrectDuration());
-            copy.sort((a,b) -> Double.compare(Fitness.getIndividualRouteFitness(a), Fitness.getIndividualRouteFitness(b)));
+        buildRanking();
+        if (correctMax && rankedFeasible.size() > 0){
+            return rankedFeasible.get(index);
         }
-        if (copy.size() == 0){
-            copy = new ArrayList<>(individuals);
-            copy.sort((a,b) -> Double.compare(Fitness.getIndividualFitness(a), Fitness.getIndividualFitness(b)));
+        return rankedByFitness.get(index);
+    }
+
+    // Sort the population once per generation on the cached fitness values, later lookups are constant time
+    private void buildRanking(){
+        if (rankedByFitness != null){
+            return;
         }
-        return copy.get(index);
+        rankedByFitness = new ArrayList<>(individuals);
+        rankedByFitness.sort(Comparator.comparingDouble(Individual::getFitness));
+        rankedByRouteFitness = new ArrayList<>(individuals);
+        rankedByRouteFitness.sort(Comparator.comparingDouble(Individual::getRouteFitness));
+        rankedFeasible = rankedByRouteFitness.stream()
+                                             .filter(Individual::isFeasible)
+                                             .collect(Collectors.toList());
     }
 
+    /**
+     * Creates and evaluates the individuals in parallel on the executor, one task per individual writing to its own slot.
+     * Every task draws from a stream split off the calling thread's stream in order, so the population does not depend on scheduling.
+     * The first Parameters.seededShare of the individuals are built with the savings and sweep heuristics in turn, the rest at random.
+     */
     public void generatePopulation() {
-        Individual newIndividual = null;
-        for (int i = 0; i < Parameters.populationSize; i++) {
-            newIndividual = new Individual(depots, this.maxNumOfVehicles);
-            boolean created = newIndividual.createRandomIndividual(customers);
-            while (!created){
-                newIndividual.createDepots(depots);
-                created = newIndividual.createRandomIndividual(customers);
-            }
-            System.out.println("Create individual: "+ (i+1));
-            this.individuals.add(newIndividual);
+        Individual[] created = new Individual[Parameters.populationSize];
+        int seeded = (int) Math.round(Parameters.seededShare * created.length);
+        List<Callable<Void>> tasks = new ArrayList<>(created.length);
+        for (int i = 0; i < created.length; i++) {
+            int slot = i;
+            SplittableRandom random = Utils.split();
+            tasks.add(() -> {
+                SplittableRandom previous = Utils.setRandom(random);
+                try {
+                    Individual individual = new Individual(problem.depots, problem.maxNumOfVehicles);
+                    boolean complete = slot < seeded && individual.createConstructedIndividual(problem.customers, slot % 2 == 0);
+                    // Only fails with Parameters.forceMaxLoad, when the vehicles have little more room than the customers need
+                    for (int attempt = 0; !complete; attempt++){
+                        if (attempt == Parameters.initialAttempts){
+                            Depot depot = tightestDepot();
+                            throw new IllegalStateException(String.format("No initial individual of %s fits the vehicles after %d attempts, depot %d has the least room for its closest customers",
+                                                                          problem.name, attempt, depot.id));
+                        }
+                        complete = individual.createRandomIndividual(problem.customers);
+                    }
+                    created[slot] = individual;
+                    return null;
+                } finally {
+                    Utils.setRandom(previous);
+                }
+            });
         }
+        GenerationScheduler.invokeAll(tasks);
+        this.individuals = new ArrayList<>(Arrays.asList(created));
+        this.rankedByFitness = null;
     }
 
-    public List<Individual> tournamentSelection(){
-        List<Individual> parents = Collections.synchronizedList(new ArrayList<>());
-        // Create parents list of given parentSelectionSize in parameters
-        for (int i = 0; i< (Parameters.parentSelectionSize - Parameters.eliteSize); i++){
-            ThreadedTournament tt = new ThreadedTournament(this.individuals, parents);
-            executor.execute(tt);
+    // The depot whose closest customers fill the largest share of what its vehicles can carry
+    private Depot tightestDepot() {
+        Map<Integer, Integer> demand = new HashMap<>();
+        for (Customer c : problem.customers.values()) {
+            demand.merge(c.getClosestDepot(), c.demand, Integer::sum);
         }
-        while (parents.size() != Parameters.parentSelectionSize - Parameters.eliteSize){
-            ;
+        Depot tightest = problem.depots.get(0);
+        double largestShare = -1;
+        for (Depot d : problem.depots) {
+            double share = demand.getOrDefault(d.id, 0) / (double) (Math.min(problem.maxNumOfVehicles, d.maxVehicles) * d.maxLoad);
+            if (share > largestShare) {
+                tightest = d;
+                largestShare = share;
+            }
         }
-        return parents;
+        return tightest;
     }
 
-    public List<Individual> getIndividualsWithCorrectDuration(){
-        return this.individuals.stream()
-                               .filter(individual -> individual.getDistanceDeviation() == 0.0 && individual.getLoadDeviation() == 0.0)
-                               .collect(Collectors.toList());
+    // Rebuild and evaluate the individuals of a checkpoint in parallel, keeping the order of the tours
+    public void restore(List<GiantTour> tours) {
+        Individual[] restored = new Individual[tours.size()];
+        List<Callable<Void>> tasks = new ArrayList<>(restored.length);
+        for (int i = 0; i < restored.length; i++) {
+            int slot = i;
+            tasks.add(() -> {
+                restored[slot] = tours.get(slot).toIndividual(problem.depots, problem.customers);
+                return null;
+            });
+        }
+        GenerationScheduler.invokeAll(tasks);
+        setNewPopulation(new ArrayList<>(Arrays.asList(restored)));
     }
 
     public void setNewPopulation(List<Individual> population){
         this.individuals = population;
+        this.rankedByFitness = null;
     }
 
-    public List<Individual> crossover(List<Individual> parents, int generationCount){
-        List<Individual> new_population = Collections.synchronizedList(new ArrayList<>());
-        for (int i=0; i<Parameters.populationSize;i++){
-            Individual p1 = parents.get(Utils.randomInt(parents.size()));
-            Individual p2 = Utils.randomPick(parents, p -> p != p1);
-            ThreadedCrossover offspring = new ThreadedCrossover(p1, p2, generationCount, new_population);     
-            executor.execute(offspring);
-        }
-        return new_population;
+    // Replace the worst individuals with migrants from another island
+    public void immigrate(List<Individual> migrants){
+        buildRanking();
+        List<Individual> survivors = new ArrayList<>(rankedByFitness.subList(0, Math.max(0, rankedByFitness.size() - migrants.size())));
+        survivors.addAll(migrants);
+        setNewPopulation(survivors);
     }
 
     public List<Individual> survivorSelection(List<Individual> parents, List<Individual> offspring){
@@ -0,0 +1,124 @@
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import data_classes.Customer;
+
+/**
+ * Everything that is fixed for one problem instance: customers, depots, distances, the spatial index and the clustering
+ * of customers to depots. It is set up once and then only read, so it is shared by every population solving the instance.
+ * The instance being solved is bound to the current thread, and tasks submitted through GenerationScheduler.invokeAll
+ * run with the instance of the thread that submitted them, so several instances can be solved at once in one JVM.
+ */
+public class Problem {
+
+    private static final ThreadLocal<Problem> current = new ThreadLocal<>();
+
+    public final String name;
+    public final HashMap<Integer, Customer> customers;
+    public final List<Depot> depots;
+    public final DistanceMatrix distances;
+    public final SpatialIndex spatialIndex;
+    public final FlatEvaluator evaluator;
+    public final int maxNumOfVehicles;
+    public final double threshold;
+    // Not part of the instance, but shared by everything solving it in the same way
+    public final Metrics metrics = new Metrics();
+
+    public Problem(String name, DataSetIO dataSet) {
+        this(name, dataSet, null, null, null);
+    }
+
+    /**
+     * Set up an instance from parts computed earlier by InstanceCache, parts that are null are computed here.
+     * candidates holds the depot ids of every customer in candidate order, indexed by customer id - 1.
+     */
+    Problem(String name, DataSetIO dataSet, double[] distanceTable, int[] neighbours, int[][] candidates) {
+        this.name = name;
+        this.customers = dataSet.getCustomers();
+        this.depots = dataSet.getDepots();
+        this.distances = new DistanceMatrix(customers.values(), depots, distanceTable);
+        for (Depot depot : depots) {
+            depot.setDistances(distances);
+        }
+        this.spatialIndex = new SpatialIndex(distances, Parameters.neighbourhoodSize, neighbours);
+        this.evaluator = new FlatEvaluator(distances, customers.values(), depots);
+        this.maxNumOfVehicles = dataSet.getMaxNumOfVehicles();
+        this.threshold = DataSetIO.getThreshold(name);
+        if (candidates == null) {
+            initialDepotClustering(depots, customers.values());
+        } else {
+            for (Customer customer : customers.values()) {
+                for (int depotId : candidates[distances.index(customer)]) {
+                    customer.candidateList.add(depotId);
+                    depots.get(depotId - 1).addSwappableCustomer(distances.index(customer));
+                }
+            }
+        }
+    }
+
+    // Parse an instance from its dataset file, through InstanceCache if Parameters.instanceCache is set
+    public static Problem load(String name, String filename) {
+        if (Parameters.instanceCache) {
+            return InstanceCache.load(name, filename);
+        }
+        DataSetIO dataSet = new DataSetIO();
+        dataSet.readDataFile(filename);
+        return new Problem(name, dataSet);
+    }
+
+    // The instance bound to the current thread
+    public static Problem current() {
+        Problem problem = current.get();
+        if (problem == null) {
+            throw new IllegalStateException("No problem instance is bound to " + Thread.currentThread().getName());
+        }
+        return problem;
+    }
+
+    // Bind an instance to the current thread, returns the previous one so it can be restored
+    public static Problem set(Problem problem) {
+        Problem previous = current.get();
+        current.set(problem);
+        return previous;
+    }
+
+    // Wrap a task so it runs with the instance bound to the calling thread, whichever thread ends up running it
+    public static <T> Callable<T> bind(Callable<T> task) {
+        return bind(current.get(), task);
+    }
+
+    // Wrap a task so it runs with the given instance, whichever thread ends up running it
+    public static <T> Callable<T> bind(Problem problem, Callable<T> task) {
+        return () -> {
+            Problem previous = set(problem);
+            try {
+                return task.call();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    private void initialDepotClustering(List<Depot> depots, Collection<Customer> customers) {
+        Depot[] depotByIndex = new Depot[depots.size()];
+        for (Depot depot : depots) {
+            depotByIndex[distances.index(depot) - distances.getNumberOfCustomers()] = depot;
+        }
+        for (Customer customer : customers) {
+            int point = distances.index(customer);
+            double closestDistance = distances.get(point, spatialIndex.nearestDepot(point));
+            // "Using Genetic Algorithms for Multi-depot Vehicle Routing" p. 90:
+            // candidates are the depots at most swappableCustomerDistance further away than the closest one
+            List<Integer> candidates = spatialIndex.depotsWithin(point, closestDistance * (1 + Parameters.swappableCustomerDistance));
+            candidates.sort(Comparator.comparingDouble(depot -> distances.get(point, depot)));
+            for (int candidate : candidates) {
+                Depot depot = depotByIndex[candidate - distances.getNumberOfCustomers()];
+                customer.candidateList.add(depot.id);
+                depot.addSwappableCustomer(point);
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that an island continued from a checkpoint evolves exactly like the island it was taken from.
+ * Run from the repository root like Main, with the instance, the seed, the generation to checkpoint at and the generation to stop at, e.g.
+ *     java -cp out ResumeCheck p08 42 200 300
+ * The population goes through GiantTour.write and read like a checkpoint file. After every generation LocalSearch improves
+ * every individual of both islands, so the check covers it even when Parameters.localSearchRate leaves it off.
+ * Tours and fitness are compared bit for bit, and the first generation where they differ is reported.
+ */
+class ResumeCheck{
+
+    public static void main(String[] args) throws IOException{
+        String instance = args.length > 0 ? args[0] : "p08";
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        int checkpoint = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int end = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+
+        Utils.setRandom(Utils.stream(seed));
+        Problem problem = Problem.load(instance, "MDVRP/dataset/"+instance);
+        Problem.set(problem);
+        GeneticAlgorithm original = new GeneticAlgorithm(problem);
+        for (int generation = 1; generation <= checkpoint; generation++){
+            original.step();
+            improve(original, seed, generation);
+        }
+        Checkpoint.Island state = original.snapshot();
+        List<GiantTour> population = new ArrayList<>();
+        for (GiantTour tour : state.population){
+            population.add(GiantTour.read(new DataInputStream(new ByteArrayInputStream(encode(tour)))));
+        }
+        GeneticAlgorithm resumed = new GeneticAlgorithm(problem, new Checkpoint.Island(state.island, state.generation, population, state.bestSolution, state.bestSolutionFitness), new ArrayList<>());
+
+        for (int generation = checkpoint + 1; generation <= end; generation++){
+            original.step();
+            resumed.step();
+            improve(original, seed, generation);
+            improve(resumed, seed, generation);
+            String difference = compare(original.getPopulation().getIndividuals(), resumed.getPopulation().getIndividuals());
+            if (difference != null){
+                System.out.println(instance + " diverged at generation " + generation + ": " + difference);
+                System.exit(1);
+            }
+        }
+        System.out.println(instance + " resumed at generation " + checkpoint + " is identical to generation " + end);
+        System.exit(0);
+    }
+
+    // Both islands get the same random stream for a generation, so the check does not depend on what LocalSearch draws
+    private static void improve(GeneticAlgorithm ga, long seed, int generation){
+        Utils.setRandom(Utils.stream(seed, generation));
+        List<Individual> individuals = ga.getPopulation().getIndividuals();
+        for (Individual individual : individuals){
+            individual.localSearch();
+        }
+        // Rank the population again on the improved fitness, as a checkpoint taken now would
+        ga.getPopulation().setNewPopulation(individuals);
+    }
+
+    private static String compare(List<Individual> original, List<Individual> resumed) throws IOException{
+        if (original.size() != resumed.size()){
+            return "population sizes " + original.size() + " and " + resumed.size();
+        }
+        for (int i = 0; i < original.size(); i++){
+            Individual a = original.get(i), b = resumed.get(i);
+            if (Double.doubleToLongBits(a.getFitness()) != Double.doubleToLongBits(b.getFitness())){
+                return "individual " + i + " fitness " + a.getFitness() + " and " + b.getFitness();
+            }
+            if (!Arrays.equals(encode(a.toGiantTour()), encode(b.toGiantTour()))){
+                return "individual " + i + " routes differ";
+            }
+        }
+        return null;
+    }
+
+    private static byte[] encode(GiantTour tour) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        tour.write(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+}
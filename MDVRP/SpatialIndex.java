@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over the coordinates of all customers and depots, using the ordinals of DistanceMatrix.
+ * The cell size is chosen so each cell holds about two points, which makes nearest neighbour queries 
+ * look at a handful of cells instead of every point.
+ * The k nearest customers of every customer are precomputed once and used as granular neighbourhoods.
+ * Depot queries scan the depots directly, there are only a few of them and they may be far apart in a dense grid.
+ */
+public class SpatialIndex {
+
+    private final DistanceMatrix distances;
+    private final int minX, minY, columns, rows;
+    private final double cellSize;
+    // Points sorted by cell, the points of cell c are cellPoints[cellStart[c] .. cellStart[c+1])
+    private final int[] cellStart, cellPoints;
+    // The k nearest customers of customer i are neighbours[i*k .. (i+1)*k), closest first
+    private final int[] neighbours;
+    private final int k;
+
+    public SpatialIndex(DistanceMatrix distances, int neighbourhoodSize) {
+        this(distances, neighbourhoodSize, null);
+    }
+
+    // Uses neighbour lists computed earlier (by InstanceCache) for the same points if they are given
+    public SpatialIndex(DistanceMatrix distances, int neighbourhoodSize, int[] neighbours) {
+        this.distances = distances;
+        int n = distances.size();
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            minX = Math.min(minX, distances.getX(i));
+            minY = Math.min(minY, distances.getY(i));
+            maxX = Math.max(maxX, distances.getX(i));
+            maxY = Math.max(maxY, distances.getY(i));
+        }
+        this.minX = minX;
+        this.minY = minY;
+        double area = Math.max(1.0, (double) (maxX - minX + 1) * (maxY - minY + 1));
+        this.cellSize = Math.max(1.0, Math.sqrt(2.0 * area / n));
+        this.columns = (int) ((maxX - minX) / cellSize) + 1;
+        this.rows = (int) ((maxY - minY) / cellSize) + 1;
+
+        // Counting sort of the points into their cells
+        this.cellStart = new int[columns * rows + 1];
+        this.cellPoints = new int[n];
+        int[] cellOf = new int[n];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = column(distances.getX(i)) + columns * row(distances.getY(i));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] fill = new int[columns * rows];
+        for (int i = 0; i < n; i++) {
+            cellPoints[cellStart[cellOf[i]] + fill[cellOf[i]]++] = i;
+        }
+
+        int customers = distances.getNumberOfCustomers();
+        this.k = Math.max(0, Math.min(neighbourhoodSize, customers - 1));
+        if (neighbours != null) {
+            if (neighbours.length != customers * k) {
+                throw new IllegalArgumentException("Neighbour lists have " + neighbours.length + " entries, expected " + customers * k);
+            }
+            this.neighbours = neighbours;
+            return;
+        }
+        this.neighbours = new int[customers * k];
+        for (int i = 0; i < customers; i++) {
+            final int self = i;
+            int[] nearest = nearest(i, k, point -> point < customers && point != self);
+            System.arraycopy(nearest, 0, this.neighbours, i * k, k);
+        }
+    }
+
+    public int getNeighbourhoodSize() {
+        return k;
+    }
+
+    // All neighbour lists laid out after each other. Must not be written to
+    int[] getNeighbours() {
+        return neighbours;
+    }
+
+    // The r-th nearest customer of a customer, both as DistanceMatrix ordinals
+    public int getNeighbour(int customer, int r) {
+        return neighbours[customer * k + r];
+    }
+
+    // The nearest depot to a point, as a DistanceMatrix ordinal
+    public int nearestDepot(int point) {
+        int nearest = distances.getNumberOfCustomers();
+        for (int depot = nearest + 1; depot < distances.size(); depot++) {
+            if (distances.get(point, depot) < distances.get(point, nearest)) {
+                nearest = depot;
+            }
+        }
+        return nearest;
+    }
+
+    // All depots within radius of a point, as DistanceMatrix ordinals in ordinal order
+    public List<Integer> depotsWithin(int point, double radius) {
+        List<Integer> result = new ArrayList<>();
+        for (int depot = distances.getNumberOfCustomers(); depot < distances.size(); depot++) {
+            if (distances.get(point, depot) <= radius) {
+                result.add(depot);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The count points closest to a point that pass the filter, closest first.
+     * Searches rings of cells around the point's cell, and stops once no unvisited cell can hold anything closer.
+     */
+    private int[] nearest(int point, int count, IntPredicate filter) {
+        int[] best = new int[count];
+        double[] bestDistance = new double[count];
+        int found = 0;
+        int cx = column(distances.getX(point)), cy = row(distances.getY(point));
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Every point in this ring or beyond is at least (ring - 1) cells away
+            if (found == count && (ring - 1) * cellSize > bestDistance[count - 1]) {
+                break;
+            }
+            for (int y = cy - ring; y <= cy + ring; y++) {
+                if (y < 0 || y >= rows) {
+                    continue;
+                }
+                boolean edgeRow = y == cy - ring || y == cy + ring;
+                for (int x = cx - ring; x <= cx + ring; x += edgeRow ? 1 : 2 * Math.max(ring, 1)) {
+                    if (x < 0 || x >= columns) {
+                        continue;
+                    }
+                    int cell = x + columns * y;
+                    for (int c = cellStart[cell]; c < cellStart[cell + 1]; c++) {
+                        int other = cellPoints[c];
+                        if (!filter.test(other)) {
+                            continue;
+                        }
+                        double distance = distances.get(point, other);
+                        if (found == count && distance >= bestDistance[count - 1]) {
+                            continue;
+                        }
+                        // Insert into the sorted list of best points found so far
+                        int position = found < count ? found++ : count - 1;
+                        while (position > 0 && bestDistance[position - 1] > distance) {
+                            best[position] = best[position - 1];
+                            bestDistance[position] = bestDistance[position - 1];
+                            position--;
+                        }
+                        best[position] = other;
+                        bestDistance[position] = distance;
+                    }
+                }
+            }
+        }
+        if (found < count) {
+            throw new IllegalStateException("Only found " + found + " of " + count + " nearest points");
+        }
+        return best;
+    }
+
+    private int column(int x) {
+        return (int) ((x - minX) / cellSize);
+    }
+
+    private int row(int y) {
+        return (int) ((y - minY) / cellSize);
+    }
+}
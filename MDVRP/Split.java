@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.List;
+
+import data_classes.Customer;
+
+/**
+ * Prins' Split for one depot: cuts a sequence of customers into consecutive routes, keeping their order,
+ * so that the cost of the depot under Fitness is as low as possible with at most maxRoutes vehicles.
+ * Routes within maxLoad and maxDuration form a shortest path problem over the positions in the sequence, solved
+ * with one Bellman layer per vehicle. A route ends as soon as it breaks a limit, so a layer takes O(n) times the
+ * length of the longest feasible route. Customers the feasible routes cannot reach go to one last route that is
+ * penalised like Fitness does, unless Parameters.forceMaxLoad forbids its load. With forceMaxLoad only the load is a limit
+ * and every route may break maxDuration at its penalty, otherwise a random order would rarely fit the vehicles.
+ */
+public class Split {
+
+    /**
+     * End (exclusive) of every route in the order, or null if Parameters.forceMaxLoad is set and the customers
+     * do not fit in maxRoutes vehicles in this order.
+     */
+    public static int[] split(List<Customer> order, Depot depot, int maxRoutes) {
+        int n = order.size();
+        if (n == 0) {
+            return new int[0];
+        }
+        if (maxRoutes == 0) {
+            return null;
+        }
+        DistanceMatrix distances = depot.getDistances();
+        int depotIndex = distances.index(depot);
+        int[] nodes = new int[n];
+        int[] demands = new int[n];
+        for (int i = 0; i < n; i++) {
+            nodes[i] = distances.index(order.get(i));
+            demands[i] = order.get(i).demand;
+        }
+
+        // cost[r][j] is the cheapest way to serve the first j customers with r feasible routes
+        double[][] cost = new double[maxRoutes][n + 1];
+        int[][] previous = new int[maxRoutes][n + 1];
+        for (double[] layer : cost) {
+            Arrays.fill(layer, Double.MAX_VALUE);
+        }
+        cost[0][0] = 0.0;
+        for (int r = 1; r < maxRoutes; r++) {
+            for (int i = r - 1; i < n; i++) {
+                if (cost[r - 1][i] == Double.MAX_VALUE) {
+                    continue;
+                }
+                int load = 0;
+                double length = 0.0;
+                for (int j = i; j < n; j++) {
+                    load += demands[j];
+                    length += j == i ? distances.get(depotIndex, nodes[j]) : distances.get(nodes[j - 1], nodes[j]);
+                    double routeLength = length + distances.get(nodes[j], depotIndex);
+                    if (load > depot.maxLoad || (!Parameters.forceMaxLoad && depot.maxDuration != 0 && routeLength > depot.maxDuration)) {
+                        break;
+                    }
+                    double total = cost[r - 1][i] + routeCost(routeLength, load, depot);
+                    if (total < cost[r][j + 1]) {
+                        cost[r][j + 1] = total;
+                        previous[r][j + 1] = i;
+                    }
+                }
+            }
+        }
+
+        // The last route serves everything from i on, whether or not it is feasible
+        int bestRoutes = -1, bestStart = -1;
+        double best = Double.MAX_VALUE;
+        int load = 0;
+        double length = distances.get(nodes[n - 1], depotIndex);
+        for (int i = n - 1; i >= 0; i--) {
+            load += demands[i];
+            if (i < n - 1) {
+                length += distances.get(nodes[i], nodes[i + 1]);
+            }
+            if (load > depot.maxLoad && Parameters.forceMaxLoad) {
+                break;
+            }
+            double last = routeCost(length + distances.get(depotIndex, nodes[i]), load, depot);
+            for (int r = 0; r < maxRoutes; r++) {
+                if (cost[r][i] != Double.MAX_VALUE && cost[r][i] + last < best) {
+                    best = cost[r][i] + last;
+                    bestRoutes = r;
+                    bestStart = i;
+                }
+            }
+        }
+        if (bestRoutes < 0) {
+            return null;
+        }
+
+        int[] ends = new int[bestRoutes + 1];
+        ends[bestRoutes] = n;
+        for (int r = bestRoutes, j = bestStart; r > 0; r--) {
+            ends[r - 1] = j;
+            j = previous[r][j];
+        }
+        return ends;
+    }
+
+    // Fitness of a single route of the depot
+    private static double routeCost(double length, int load, Depot depot) {
+        double durationDeviation = depot.maxDuration != 0 && length > depot.maxDuration ? length - depot.maxDuration : 0.0;
+        double loadDeviation = load > depot.maxLoad ? load - depot.maxLoad : 0.0;
+        return Fitness.getFitness(1, length, durationDeviation, loadDeviation);
+    }
+
+    // Fill the empty vehicles of the depot with the routes of order ending at ends, as returned by split
+    public static void apply(List<Customer> order, Depot depot, int[] ends) {
+        List<Vehicle> vehicles = depot.getAllVehicles();
+        int start = 0;
+        for (int r = 0; r < ends.length; r++) {
+            vehicles.get(r).addCustomersToRoute(order.subList(start, ends[r]), 0);
+            start = ends[r];
+        }
+    }
+}
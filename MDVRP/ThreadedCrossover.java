@@ -1,33 +1,66 @@
-import java.util.List;
 import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
 
 import data_classes.Tuple;
 
-public class ThreadedCrossover implements Runnable{
+/**
+ * Breeds two offspring into the slots slot and slot+1 of an array shared by all crossovers of a generation,
+ * so crossovers running in parallel never write to the same place. A second offspring without a slot is not kept.
+ */
+public class ThreadedCrossover implements Callable<Void>{
     
     public Tuple<Individual, Individual> parents, offspring;
     public int generation;
-    public List<Individual> population;
+    private final Individual[] offspringSlots;
+    private final int slot;
+    private SplittableRandom random;
 
-    public ThreadedCrossover(Individual i1, Individual i2, int generation, List<Individual> population){
+    public ThreadedCrossover(Individual i1, Individual i2, int generation, Individual[] offspringSlots, int slot, SplittableRandom random){
         this.parents = new Tuple<>(i1, i2);
         this.generation = generation;
-        this.population = population;
+        this.offspringSlots = offspringSlots;
+        this.slot = slot;
+        this.random = random;
     }
 
-    public void run(){
+    // Fitness of the offspring is left to the evaluation phase in GenerationScheduler
+    public Void call(){
+        SplittableRandom previous = Utils.setRandom(this.random);
+        try {
+            Tuple<Individual, Individual> pair = breed();
+            this.offspringSlots[this.slot] = pair.x;
+            if (this.slot + 1 < this.offspringSlots.length) {
+                this.offspringSlots[this.slot + 1] = pair.y;
+            }
+            return null;
+        } finally {
+            Utils.setRandom(previous);
+        }
+    }
+
+    private Tuple<Individual, Individual> breed(){
+        Metrics metrics = Metrics.enabled ? Problem.current().metrics : null;
+        long start = Metrics.start();
         if (Utils.randomDouble()<Parameters.crossoverProbability){
             this.offspring = parents.x.crossover(parents.y);
         } else {
             this.offspring = new Tuple<>(this.parents.x.clone(), this.parents.y.clone());
         }
         while (Objects.isNull(this.offspring)){
+            if (Metrics.enabled) {
+                metrics.add(Metrics.Metric.crossoverRetries, 1);
+            }
             if (Utils.randomDouble()<Parameters.crossoverProbability){
                 this.offspring = parents.x.crossover(parents.y);
             } else {
                 this.offspring = new Tuple<>(this.parents.x.clone(), this.parents.y.clone());
             }
         }
+        if (Metrics.enabled) {
+            metrics.stop(Metrics.Metric.crossoverNanos, start);
+        }
+        start = Metrics.start();
         double rand = Utils.randomDouble();
         if (generation % Parameters.interDepotMutationRate == 0 && generation != 0) {
             if (rand < Parameters.mutationProbability) {
@@ -37,21 +70,14 @@ public class ThreadedCrossover implements Runnable{
             }
         } else { 
             if (rand < Parameters.mutationProbability) {
-                Depot randomDepot = Utils.randomPick(this.offspring.x.getDepots(), (p->p.getAllCustomersInVehicles().size() >= 1));
-                randomDepot.intraDepotMutation();
+                this.offspring.x.intraDepotMutation();
             } else if (rand > 1 - Parameters.mutationProbability){
-                Depot randomDepot = Utils.randomPick(this.offspring.y.getDepots(), (p->p.getAllCustomersInVehicles().size() >= 1));
-                randomDepot.intraDepotMutation();
+                this.offspring.y.intraDepotMutation();
             }
         }
-        this.offspring.x.calculateFitness();
-        this.offspring.y.calculateFitness();
-        synchronized(this.population){
-            if (this.population.size() >= Parameters.populationSize){
-                return;
-            }
-            this.population.add(this.offspring.x);
-            this.population.add(this.offspring.y);
+        if (Metrics.enabled) {
+            metrics.stop(Metrics.Metric.mutationNanos, start);
         }
+        return this.offspring;
     }
 }
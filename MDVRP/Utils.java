@@ -1,52 +1,101 @@
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.util.function.Predicate;
 
-import data_classes.Customer;
 import data_classes.Tuple;
 
 public class Utils {
 
-    private static final Random rand = new Random();
+    private static long seed = Parameters.seed != -1 ? Parameters.seed : System.nanoTime();
+    /* 
+     * Every thread draws from its own stream, so no two threads contend on a shared generator. 
+     * Tasks are handed a stream split off on the thread that creates them and install it with setRandom while they run, 
+     * which makes a run depend only on the seed and never on which thread happens to execute a task. 
+     * Threads that never install a stream fall back to one derived from their thread id.
+     */
+    private static final ThreadLocal<SplittableRandom> rand = ThreadLocal.withInitial(() -> stream(Thread.currentThread().getId(), -1));
 
-    // Pick a random item from a list that satisfies a condition
+    public static long getSeed() {
+        return seed;
+    }
+
+    // Replace the seed before any stream is drawn from it, used to continue a run from a Checkpoint
+    public static void setSeed(long newSeed) {
+        seed = newSeed;
+    }
+
+    // A stream fully determined by the seed and the given keys, e.g. (island, generation)
+    public static SplittableRandom stream(long... keys) {
+        long z = seed;
+        for (long key : keys) {
+            z = mix(z + 0x9e3779b97f4a7c15L * (key + 1));
+        }
+        return new SplittableRandom(mix(z));
+    }
+
+    // Install a stream for the current thread, returns the previous one so it can be restored
+    public static SplittableRandom setRandom(SplittableRandom random) {
+        SplittableRandom previous = rand.get();
+        rand.set(random);
+        return previous;
+    }
+
+    // New independent stream split off the current thread's stream, to be handed to a task
+    public static SplittableRandom split() {
+        return rand.get().split();
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    public static <T> void shuffle(List<T> list) {
+        SplittableRandom random = rand.get();
+        for (int i = list.size() - 1; i > 0; i--) {
+            Collections.swap(list, i, random.nextInt(i + 1));
+        }
+    }
+
+    // Pick a random item from a list that satisfies a condition, null if none does. Counts the matches and then walks to a random one, so nothing is copied
     public static <T> T randomPick(List<T> list, Predicate<T> predicate) {
-        List<T> listCopy = new ArrayList<>(list);
-        Collections.shuffle(listCopy);
-        int index = 0;
-        T pick = listCopy.get(index);
-        while (!predicate.test(pick)) {
-            if (index >= listCopy.size()) {
-                return null;
+        int matches = 0;
+        for (int i = 0; i < list.size(); i++) {
+            if (predicate.test(list.get(i))) {
+                matches++;
             }
-            pick = listCopy.get(index);
-            index++;
         }
-        return pick;
+        if (matches == 0) {
+            return null;
+        }
+        int pick = randomInt(matches);
+        for (int i = 0; i < list.size(); i++) {
+            T item = list.get(i);
+            if (predicate.test(item) && pick-- == 0) {
+                return item;
+            }
+        }
+        return null;
     }
 
     public static double randomDouble(){
-        return rand.nextDouble();
+        return rand.get().nextDouble();
     }
 
     public static int randomInt(int bound){
-        return rand.nextInt(bound);
+        return rand.get().nextInt(bound);
     }
 
     public static Tuple<Integer, Integer> randomCutpoints(int bound){
-        int cutPoint1 = Utils.randomInt(bound);
-        int cutPoint2 = Utils.randomInt(bound); 
+        SplittableRandom random = rand.get();
+        int cutPoint1 = random.nextInt(bound);
+        int cutPoint2 = random.nextInt(bound); 
         while (cutPoint1 == cutPoint2) {
-            cutPoint2 = Utils.randomInt(bound);
+            cutPoint2 = random.nextInt(bound);
         }
         return new Tuple<>(cutPoint1, cutPoint2);
     }
-
-    public static List<Customer> allSwappableCustomers(Depot depot) {
-        List<Customer> copy = new ArrayList<>(depot.getSwappableCustomers());
-        copy.retainAll(depot.getAllCustomersInVehicles());
-        return copy;
-    }
 }
@@ -1,6 +1,7 @@
 import java.util.List;
 import java.util.Objects;
 import java.util.ArrayList;
+import java.util.Collections;
 
 import data_classes.*;
 
@@ -9,8 +10,13 @@ public class Vehicle{
     
     public final int id, maxLoad, maxDuration;
     private int load = 0;
+    private double routeLength = 0.0; // Summed again by every method that changes the route, see routeChanged
     private List<Customer> customers = new ArrayList<>();
     private Depot depot;
+    // Matrix indices of the route with the depot at both ends and the length of the edge leaving each of them,
+    // rebuilt with every change while the vehicle has a depot so every position is scored in constant time
+    private int[] nodes = new int[0];
+    private double[] edges = new double[0];
 
     public Vehicle(int id, int maxLoad, int maxDuration) {
         this.id = id;
@@ -23,8 +29,11 @@ public class Vehicle{
         this.maxLoad = vehicle.maxLoad;
         this.maxDuration = vehicle.maxDuration;
         this.load = vehicle.getLoad();
+        this.routeLength = vehicle.routeLength;
         this.customers = new ArrayList<>(vehicle.getCustomers());
         this.depot = vehicle.getDepot();
+        this.nodes = vehicle.nodes.clone();
+        this.edges = vehicle.edges.clone();
     }
 
     public Vehicle(Vehicle vehicle, List<Customer> customers){
@@ -42,14 +51,21 @@ public class Vehicle{
         }
         this.load += customer.demand;
         this.customers.add(customer);
+        routeChanged();
     }
 
     public void insertCustomer(Customer customer, int index){
         if (this.load + customer.demand > this.maxLoad && Parameters.forceMaxLoad) {
             throw new IllegalStateException("Too much load for current route");
         }
+        restoreCustomer(customer, index);
+    }
+
+    // Put back a customer that was just removed from index. The load is what it was before, so maxLoad is not checked again
+    public void restoreCustomer(Customer customer, int index){
         this.load += customer.demand;
         this.customers.add(index, customer);
+        routeChanged();
     }
 
     public void addCustomersToRoute(List<Customer> customers, int index){
@@ -59,81 +75,132 @@ public class Vehicle{
         }
         this.load += totalDemand;
         this.customers.addAll(index, customers);
+        routeChanged();
     }
 
     public boolean removeCustomer(Customer customer){
-        boolean removed = this.customers.remove(customer);
-        if (removed){
-            this.load -= customer.demand;
-            return true;
+        int index = this.customers.indexOf(customer);
+        if (index == -1){
+            return false;
+        }
+        removeCustomerAt(index);
+        return true;
+    }
+
+    public Customer removeCustomerAt(int index){
+        Customer customer = this.customers.remove(index);
+        this.load -= customer.demand;
+        routeChanged();
+        return customer;
+    }
+
+    // Reverse the customers in positions from..to (inclusive)
+    public void reverseSegment(int from, int to){
+        Collections.reverse(this.customers.subList(from, to + 1));
+        routeChanged();
+    }
+
+    // Replace the customer at a position in the route, used when swapping customers between routes
+    public Customer setCustomer(int index, Customer customer){
+        Customer replaced = this.customers.get(index);
+        this.load += customer.demand - replaced.demand;
+        this.customers.set(index, customer);
+        routeChanged();
+        return replaced;
+    }
+
+    /**
+     * Rebuild the flat route and sum it in order after every change. An update by the change in length alone would be
+     * cheaper, but it leaves rounding that depends on how the route was built, and then a route restored from a checkpoint
+     * compares differently to the same route in the run it continues.
+     */
+    private void routeChanged(){
+        if (this.depot == null){
+            this.routeLength = 0.0;
+            return;
         }
-        return false;
+        updateNodes(this.depot.getDistances());
+        double length = 0.0;
+        for (int i = 0; i <= this.customers.size(); i++){
+            length += this.edges[i];
+        }
+        this.routeLength = length;
     }
 
+    // Best insertion index and its cost for this vehicle, or null if the customer can not be inserted
     public Tuple<Integer, Double> feasibleInsertion(Customer customer){
-        if (this.load + customer.demand > this.maxLoad && Parameters.forceMaxLoad){
+        if (this.depot == null){
             return null;
         }
-        List<Customer> cCopy = new ArrayList<>(this.customers);
-        int lengthOfRoute = cCopy.size();
-        double lowestDiff = Integer.MAX_VALUE;
-        int index = -1;
-        if (lengthOfRoute == 0){
-            try {
-                lowestDiff = 2 * Fitness.getDistance(customer, this.depot);
-            } catch (NullPointerException e){
-                return null;
-            }
-
-            double durationDeviation = 0;
-            if (this.maxDuration != 0){
-                durationDeviation = (lowestDiff > this.maxDuration ? lowestDiff - this.maxDuration : 0);
-            }
-            return new Tuple<>(0, Parameters.beta * lowestDiff + Parameters.durationPenalty * durationDeviation);
-        }
-        for (int i=0; i< lengthOfRoute + 1 ;i++){
-            double currentDist, diff;
-            try {
-                if (i==0){
-                    currentDist = Fitness.getDistance(cCopy.get(0), this.depot);
-                    diff = Fitness.getDistance(customer, this.depot) + Fitness.getDistance(customer, cCopy.get(0)) - currentDist;
-                } else if(i == lengthOfRoute) {
-                    currentDist = Fitness.getDistance(cCopy.get(lengthOfRoute-1), this.depot);
-                    diff = Fitness.getDistance(customer, this.depot) + Fitness.getDistance(customer, cCopy.get(lengthOfRoute-1)) - currentDist;
-                } else {
-                    currentDist = Fitness.getDistance(cCopy.get(i-1), cCopy.get(i));
-                    diff = Fitness.getDistance(customer, cCopy.get(i-1)) + Fitness.getDistance(customer, cCopy.get(i)) - currentDist;
-                }
-            } catch (NullPointerException e){
-                return null;
-            }
-            if (diff < lowestDiff) {
-                lowestDiff = diff;
-                index = i;
-            }
-        }
+        DistanceMatrix distances = this.depot.getDistances();
+        int index = bestInsertionIndex(customer, distances);
         if (index == -1){
             return null;
         }
+        return new Tuple<>(index, insertionCost(customer, index, distances));
+    }
+
+    /**
+     * Position where inserting customer adds the least route length, or -1 if the vehicle has no depot
+     * or Parameters.forceMaxLoad leaves no room for the customer.
+     */
+    int bestInsertionIndex(Customer customer, DistanceMatrix distances){
+        if (this.depot == null || (this.load + customer.demand > this.maxLoad && Parameters.forceMaxLoad)){
+            return -1;
+        }
+        return InsertionKernel.instance.bestPosition(distances, distances.index(customer), this.nodes, this.edges, this.customers.size() + 1);
+    }
+
+    /**
+     * Cost of inserting customer at index as Fitness would count it, where the load and duration deviations only
+     * include what the insertion adds. Used to pick the globally best insertion in Depot.
+     */
+    double insertionCost(Customer customer, int index, DistanceMatrix distances){
+        int node = distances.index(customer);
+        double diff = distances.get(this.nodes[index], node) + distances.get(node, this.nodes[index+1]) - this.edges[index];
         double loadDeviation = 0;
-        if (!Parameters.forceMaxLoad){
-            // Only count contributions made by the new insertion.
-            loadDeviation = this.load > this.maxLoad ? customer.demand : (customer.demand + this.load > this.maxLoad  ? this.load + customer.demand - this.maxLoad : 0);
+        if (!Parameters.forceMaxLoad && this.customers.size() > 0){
+            loadDeviation = this.load > this.maxLoad ? customer.demand : (customer.demand + this.load > this.maxLoad ? this.load + customer.demand - this.maxLoad : 0);
         }
-        double oldFit = Fitness.getVehicleFitness(this, this.depot);
         double durationDeviation = 0;
         if (this.maxDuration != 0){
-            // Only count contributions made by the new insertion.
-            durationDeviation = (oldFit > this.maxDuration ? lowestDiff : (lowestDiff + oldFit > this.maxDuration ? lowestDiff + oldFit - this.maxDuration : 0));
+            double oldFit = this.getRouteLength();
+            durationDeviation = (oldFit > this.maxDuration ? diff : (diff + oldFit > this.maxDuration ? diff + oldFit - this.maxDuration : 0));
+        }
+        return Parameters.loadPenalty * loadDeviation + 
+               Parameters.beta * diff + 
+               Parameters.durationPenalty * durationDeviation;
+    }
+
+    // The arrays only grow, so a route that keeps changing is scored without allocating
+    private void updateNodes(DistanceMatrix distances){
+        int size = this.customers.size();
+        if (this.nodes.length < size + 2){
+            this.nodes = new int[size * 2 + 2];
+            this.edges = new double[size * 2 + 2];
+        }
+        int depotNode = distances.index(this.depot);
+        this.nodes[0] = depotNode;
+        for (int i = 0; i < size; i++){
+            this.nodes[i+1] = distances.index(this.customers.get(i));
         }
-        // Returns the index of best insertion and the new fitness-value which will give a globally optimal choice in Depot
-        return new Tuple<>(index, Parameters.loadPenalty * loadDeviation + 
-                                  Parameters.beta * lowestDiff + 
-                                  Parameters.durationPenalty * durationDeviation);
+        this.nodes[size+1] = depotNode;
+        for (int i = 0; i <= size; i++){
+            this.edges[i] = size == 0 ? 0.0 : distances.get(this.nodes[i], this.nodes[i+1]);
+        }
+    }
+
+    // Matrix indices of the route from the depot back to the depot, only valid while the vehicle has a depot. Must not be written to
+    int[] getNodes(){
+        return this.nodes;
     }
 
     public void setDepot(Depot depot){
+        boolean moved = this.depot == null || this.depot.id != depot.id;
         this.depot = depot;
+        if (moved){
+            routeChanged();
+        }
     }
 
     public Depot getDepot(){
@@ -158,6 +225,10 @@ public class Vehicle{
         return this.load;
     }
 
+    public double getRouteLength(){
+        return this.routeLength;
+    }
+
 
     @Override
     public boolean equals(Object o) {
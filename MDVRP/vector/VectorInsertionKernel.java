@@ -0,0 +1,81 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * InsertionKernel on jdk.incubator.vector, scoring four insertion positions per 256 bit vector.
+ * Distances are gathered from the dense table of DistanceMatrix, or computed from its coordinates when there is no table,
+ * with the same operations as the scalar code so both pick the same position. Positions that do not fill a vector are scored
+ * by the scalar loop. Routes are short, so four lanes fill more often than the eight of AVX-512, and 512 bit gathers
+ * crashed C2 on JDK 17. Narrower machines use the scalar loop, two lane vectors are slower than it.
+ * Kept out of MDVRP/*.java so the plain build does not need the incubator module. From the repository root, after the plain build:
+ *     javac --add-modules jdk.incubator.vector -cp out -d out MDVRP/vector/*.java
+ *     java --add-modules jdk.incubator.vector -cp out BatchRunner p01
+ * Without either step InsertionKernel falls back to its scalar loop.
+ */
+class VectorInsertionKernel extends InsertionKernel {
+
+    private static final VectorSpecies<Double> doubles = DoubleVector.SPECIES_256;
+    // Same number of lanes as doubles, for gathering the integer coordinates
+    private static final VectorSpecies<Integer> ints = IntVector.SPECIES_128;
+    private static final DoubleVector lanes = DoubleVector.fromArray(doubles, iota(doubles.length()), 0);
+
+    public VectorInsertionKernel() {
+        if (DoubleVector.SPECIES_PREFERRED.vectorBitSize() < doubles.vectorBitSize()) {
+            throw new UnsupportedOperationException("No 256 bit vectors on this machine");
+        }
+    }
+
+    private static double[] iota(int length) {
+        double[] iota = new double[length];
+        for (int i = 0; i < length; i++) {
+            iota[i] = i;
+        }
+        return iota;
+    }
+
+    @Override
+    int bestPosition(DistanceMatrix distances, int node, int[] nodes, double[] edges, int positions) {
+        int vectorEnd = doubles.loopBound(positions);
+        if (vectorEnd == 0) {
+            return super.bestPosition(distances, node, nodes, edges, positions);
+        }
+        // Each lane keeps its lowest diff and the first position it was seen at
+        DoubleVector best = DoubleVector.broadcast(doubles, Double.MAX_VALUE);
+        DoubleVector bestIndex = DoubleVector.broadcast(doubles, -1);
+        for (int i = 0; i < vectorEnd; i += doubles.length()) {
+            DoubleVector diff = distancesTo(distances, node, nodes, i)
+                    .add(distancesTo(distances, node, nodes, i + 1))
+                    .sub(DoubleVector.fromArray(doubles, edges, i));
+            VectorMask<Double> better = diff.lt(best);
+            best = best.blend(diff, better);
+            bestIndex = bestIndex.blend(lanes.add(i), better);
+        }
+        double lowestDiff = best.reduceLanes(VectorOperators.MIN);
+        // The first position among the lanes that reached the lowest diff
+        int index = (int) bestIndex.blend(Double.MAX_VALUE, best.compare(VectorOperators.NE, lowestDiff)).reduceLanes(VectorOperators.MIN);
+        for (int i = vectorEnd; i < positions; i++) {
+            double diff = distances.get(nodes[i], node) + distances.get(node, nodes[i+1]) - edges[i];
+            if (diff < lowestDiff) {
+                lowestDiff = diff;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    // Distances from node to nodes[from], nodes[from+1], ... one per lane
+    private static DoubleVector distancesTo(DistanceMatrix distances, int node, int[] nodes, int from) {
+        double[] table = distances.getTable();
+        if (table != null) {
+            return DoubleVector.fromArray(doubles, table, node * distances.size(), nodes, from);
+        }
+        DoubleVector x = ((DoubleVector) IntVector.fromArray(ints, distances.getXs(), 0, nodes, from).convertShape(VectorOperators.I2D, doubles, 0))
+                .sub(distances.getX(node));
+        DoubleVector y = ((DoubleVector) IntVector.fromArray(ints, distances.getYs(), 0, nodes, from).convertShape(VectorOperators.I2D, doubles, 0))
+                .sub(distances.getY(node));
+        return x.mul(x).add(y.mul(y)).sqrt();
+    }
+}